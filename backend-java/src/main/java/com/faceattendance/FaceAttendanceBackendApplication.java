@@ -2,11 +2,19 @@ package com.faceattendance;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FaceAttendanceBackendApplication {
 
+    /** Startup steps kept for the startup report and /actuator/startup */
+    private static final int STARTUP_STEPS = 4096;
+
     public static void main(String[] args) {
-        SpringApplication.run(FaceAttendanceBackendApplication.class, args);
+        SpringApplication application = new SpringApplication(FaceAttendanceBackendApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+        application.run(args);
     }
 }
@@ -0,0 +1,248 @@
+package com.faceattendance.config;
+
+import com.faceattendance.service.ShardClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the controllers, so one kiosk stuck in a
+ * retry loop cannot take recognition away from everyone else.
+ *
+ * Requests fall into three lanes:
+ * <ul>
+ *   <li>health: /api/health*, /actuator/** and shard queries from peers
+ *       presenting the shard secret, never limited</li>
+ *   <li>recognition: uploads that decode images or match faces
+ *       ({@code ratelimit.recognition.paths}) and anything else under
+ *       /api/internal/**; limited per device
+ *       (X-Device-Id header) and per client IP, and by a global cap on
+ *       concurrent requests that waits at most {@code max-wait-ms} for a slot</li>
+ *   <li>standard: everything else; limited per client IP by its own bucket
+ *       and never waits behind recognition</li>
+ * </ul>
+ * Rejected requests get 429 (bucket empty) or 503 (no recognition slot) with
+ * Retry-After. The filter runs after {@link CorsConfig}'s, so rejections carry
+ * CORS headers and browsers can read them.
+ */
+@Component
+@Order(CorsConfig.ORDER + 1)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+    private static final long IDLE_BUCKET_NANOS = TimeUnit.MINUTES.toNanos(10);
+    public static final String DEVICE_HEADER = "X-Device-Id";
+    // Uploads that decode images or match faces; offline batches, sessions and reports stay standard
+    private static final String RECOGNITION_PATHS = "/api/attendance,/api/attendance/embedding,"
+            + "/api/register,/api/register/bulk,/api/students/*/faces";
+
+    private enum Lane { HEALTH, STANDARD, RECOGNITION }
+
+    private final boolean enabled;
+    private final double deviceCapacity;
+    private final double deviceRefill;
+    private final double ipCapacity;
+    private final double ipRefill;
+    private final double standardCapacity;
+    private final double standardRefill;
+    private final long maxWaitMillis;
+    private final boolean trustForwardedFor;
+    private final String[] recognitionPaths;
+    private final int maxConcurrent;
+    private final Semaphore recognitionSlots;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper objectMapper;
+    private final ShardClient shardClient;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    public AdmissionControlFilter(
+            MeterRegistry registry,
+            ObjectMapper objectMapper,
+            ShardClient shardClient,
+            @Value("${ratelimit.enabled:true}") boolean enabled,
+            @Value("${ratelimit.device.capacity:10}") double deviceCapacity,
+            @Value("${ratelimit.device.refill-per-second:1}") double deviceRefill,
+            @Value("${ratelimit.ip.capacity:30}") double ipCapacity,
+            @Value("${ratelimit.ip.refill-per-second:5}") double ipRefill,
+            @Value("${ratelimit.standard.capacity:120}") double standardCapacity,
+            @Value("${ratelimit.standard.refill-per-second:40}") double standardRefill,
+            @Value("${ratelimit.recognition.max-concurrent:0}") int maxConcurrent,
+            @Value("${ratelimit.recognition.max-wait-ms:500}") long maxWaitMillis,
+            @Value("${ratelimit.recognition.paths:" + RECOGNITION_PATHS + "}") String[] recognitionPaths,
+            @Value("${ratelimit.trust-forwarded-for:false}") boolean trustForwardedFor) {
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+        this.shardClient = shardClient;
+        this.enabled = enabled;
+        this.deviceCapacity = deviceCapacity;
+        this.deviceRefill = deviceRefill;
+        this.ipCapacity = ipCapacity;
+        this.ipRefill = ipRefill;
+        this.standardCapacity = standardCapacity;
+        this.standardRefill = standardRefill;
+        this.maxWaitMillis = maxWaitMillis;
+        this.recognitionPaths = recognitionPaths;
+        this.trustForwardedFor = trustForwardedFor;
+        this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : 2 * Runtime.getRuntime().availableProcessors();
+        this.recognitionSlots = new Semaphore(this.maxConcurrent, true);
+
+        Gauge.builder("ratelimit.recognition.inflight", recognitionSlots, s -> this.maxConcurrent - s.availablePermits())
+                .description("Recognition requests currently holding a slot")
+                .register(registry);
+        Gauge.builder("ratelimit.recognition.queued", recognitionSlots, Semaphore::getQueueLength)
+                .description("Recognition requests waiting for a slot")
+                .register(registry);
+        Gauge.builder("ratelimit.buckets", buckets, Map::size)
+                .description("Devices and addresses with a tracked token bucket")
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Lane lane = laneOf(request);
+        if (!enabled || lane == Lane.HEALTH || "OPTIONS".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long now = System.nanoTime();
+        String ip = clientAddress(request);
+        if (lane == Lane.STANDARD) {
+            long wait = bucket("standard:" + ip, standardCapacity, standardRefill, now).tryConsume(now);
+            if (wait > 0) {
+                reject(response, lane, "ip", HttpStatus.TOO_MANY_REQUESTS, wait);
+                return;
+            }
+            count(lane, "admitted");
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String device = request.getHeader(DEVICE_HEADER);
+        if (device != null && !device.trim().isEmpty()) {
+            long wait = bucket("device:" + device.trim(), deviceCapacity, deviceRefill, now).tryConsume(now);
+            if (wait > 0) {
+                reject(response, lane, "device", HttpStatus.TOO_MANY_REQUESTS, wait);
+                return;
+            }
+        }
+        long wait = bucket("ip:" + ip, ipCapacity, ipRefill, now).tryConsume(now);
+        if (wait > 0) {
+            reject(response, lane, "ip", HttpStatus.TOO_MANY_REQUESTS, wait);
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = recognitionSlots.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            reject(response, lane, "concurrency", HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+            return;
+        }
+        try {
+            count(lane, "admitted");
+            chain.doFilter(request, response);
+        } finally {
+            recognitionSlots.release();
+        }
+    }
+
+    /**
+     * Forget buckets that are full and unused, so a stream of one-off
+     * addresses does not grow the map
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now, IDLE_BUCKET_NANOS));
+    }
+
+    private Lane laneOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/api/health") || path.startsWith("/actuator")) {
+            return Lane.HEALTH;
+        }
+        if (path.startsWith("/api/internal/")) {
+            // Only peers skip the limits; anyone else probing here is treated like a check-in
+            return shardClient.isSecretValid(request.getHeader(ShardClient.SECRET_HEADER))
+                    ? Lane.HEALTH : Lane.RECOGNITION;
+        }
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            for (String pattern : recognitionPaths) {
+                if (pathMatcher.match(pattern.trim(), path)) {
+                    return Lane.RECOGNITION;
+                }
+            }
+        }
+        return Lane.STANDARD;
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isEmpty()) {
+                return forwarded.split(",")[0].trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private TokenBucket bucket(String key, double capacity, double refillPerSecond, long now) {
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(capacity, refillPerSecond, now));
+    }
+
+    private void reject(HttpServletResponse response, Lane lane, String reason, HttpStatus status, long retryNanos)
+            throws IOException {
+        count(lane, "rejected_" + reason);
+        logger.debug("Rejected {} request ({})", lane.name().toLowerCase(), reason);
+        long retrySeconds = Math.max(1, Math.min(3600, TimeUnit.NANOSECONDS.toSeconds(retryNanos) + 1));
+        response.setStatus(status.value());
+        response.setHeader("Retry-After", Long.toString(retrySeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of(
+                "success", false,
+                "message", "concurrency".equals(reason)
+                        ? "Recognition is busy, retry shortly"
+                        : "Too many requests, retry in " + retrySeconds + " s",
+                "error_type", "rate_limited"
+        ));
+    }
+
+    private void count(Lane lane, String result) {
+        String laneName = lane.name().toLowerCase();
+        counters.computeIfAbsent(laneName + ":" + result, k -> Counter.builder("ratelimit.requests")
+                .tag("lane", laneName)
+                .tag("result", result)
+                .description("Requests seen by admission control")
+                .register(registry)).increment();
+    }
+}
@@ -1,7 +1,9 @@
 package com.faceattendance.config;
 
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -12,8 +14,14 @@ import java.util.Arrays;
 @Configuration
 public class CorsConfig {
 
+    /**
+     * Runs ahead of the other API filters, so responses they write themselves
+     * (e.g. admission control's 429 and 503) still carry CORS headers
+     */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
     @Bean
-    public CorsFilter corsFilter() {
+    public FilterRegistrationBean<CorsFilter> corsFilter() {
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         CorsConfiguration config = new CorsConfiguration();
         
@@ -37,13 +45,16 @@ public class CorsConfig {
             "Access-Control-Allow-Origin",
             "Access-Control-Allow-Methods",
             "Access-Control-Allow-Headers",
-            "Access-Control-Max-Age"
+            "Access-Control-Max-Age",
+            "Retry-After"
         ));
         
         // Max age in seconds
         config.setMaxAge(3600L);
         
         source.registerCorsConfiguration("/**", config);
-        return new CorsFilter(source);
+        FilterRegistrationBean<CorsFilter> registration = new FilterRegistrationBean<>(new CorsFilter(source));
+        registration.setOrder(ORDER);
+        return registration;
     }
 }
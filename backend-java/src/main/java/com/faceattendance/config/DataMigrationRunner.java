@@ -6,8 +6,10 @@ import com.faceattendance.repository.StudentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
@@ -19,19 +21,27 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 /**
- * Data Migration Runner - Imports attendance records from migration file on startup
+ * Data Migration Runner - Imports attendance records from migration file on startup.
+ * With migration.deferred=true the import runs on a background thread so it
+ * does not hold up startup; the repositories are only initialized if there is
+ * a file to import.
  */
 @Component
 public class DataMigrationRunner implements ApplicationRunner {
     
     private static final Logger logger = LoggerFactory.getLogger(DataMigrationRunner.class);
     
+    @Lazy
     @Autowired
     private StudentRepository studentRepository;
     
+    @Lazy
     @Autowired
     private AttendanceRecordRepository attendanceRepository;
     
+    @Value("${migration.deferred:false}")
+    private boolean deferred;
+    
     private static final String MIGRATION_DATA_FILE = "migration_data.csv";
     
     @Override
@@ -43,6 +53,14 @@ public class DataMigrationRunner implements ApplicationRunner {
             return;
         }
         
+        if (deferred) {
+            logger.info("Found migration data file, importing in the background...");
+            Thread thread = new Thread(() -> importAttendanceRecords(migrationFile), "data-migration");
+            thread.setDaemon(true);
+            thread.start();
+            return;
+        }
+        
         logger.info("Found migration data file, starting import...");
         importAttendanceRecords(migrationFile);
     }
@@ -62,9 +80,10 @@ public class DataMigrationRunner implements ApplicationRunner {
                     AttendanceRecord record = parseCSVLine(line);
                     if (record != null) {
                         // Check if record already exists
-                        if (attendanceRepository.findByStudentIdAndAttendanceDate(
+                        if (attendanceRepository.findByStudentIdAndAttendanceDateAndSessionId(
                                 record.getStudentId(), 
-                                record.getAttendanceDate()).isEmpty()) {
+                                record.getAttendanceDate(),
+                                AttendanceRecord.NO_SESSION).isEmpty()) {
                             
                             attendanceRepository.save(record);
                             count++;
@@ -0,0 +1,123 @@
+package com.faceattendance.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logs where startup time went once the application is ready: each top-level
+ * phase, and the beans that took longest to create excluding the time spent
+ * creating their dependencies. The first handled request is logged and
+ * exported as {@code application.first.request.time} (since JVM start), so a
+ * regression in time-to-first-request shows up next to Spring Boot's
+ * {@code application.ready.time}. The full timeline is at /actuator/startup
+ * when that endpoint is exposed.
+ */
+@Component
+public class StartupReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupReport.class);
+    private static final String BEAN_STEP = "spring.beans.instantiate";
+
+    @Value("${startup.report.enabled:false}")
+    private boolean enabled;
+
+    @Value("${startup.report.top-beans:15}")
+    private int topBeans;
+
+    @Autowired
+    private ApplicationStartup applicationStartup;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private volatile long firstRequestMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void report(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Startup: ready in %d ms, %d ms since JVM start",
+                event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1,
+                ManagementFactory.getRuntimeMXBean().getUptime()));
+        if (applicationStartup instanceof BufferingApplicationStartup) {
+            appendTimeline(report, ((BufferingApplicationStartup) applicationStartup).getBufferedTimeline());
+        }
+        logger.info("{}", report);
+    }
+
+    @EventListener
+    public void onRequestHandled(ServletRequestHandledEvent event) {
+        if (firstRequestSeen.compareAndSet(false, true)) {
+            firstRequestMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            TimeGauge.builder("application.first.request.time", this, TimeUnit.MILLISECONDS, r -> r.firstRequestMillis)
+                    .description("Time from JVM start until the first request was handled")
+                    .register(meterRegistry);
+            logger.info("First request ({} {}) handled {} ms after JVM start",
+                    event.getMethod(), event.getRequestUrl(), firstRequestMillis);
+        }
+    }
+
+    private void appendTimeline(StringBuilder report, StartupTimeline timeline) {
+        Map<Long, Long> childNanos = new HashMap<>();
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            Long parentId = event.getStartupStep().getParentId();
+            if (parentId != null) {
+                childNanos.merge(parentId, event.getDuration().toNanos(), Long::sum);
+            }
+        }
+
+        List<String[]> phases = new ArrayList<>();
+        List<Object[]> beans = new ArrayList<>();
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            StartupStep step = event.getStartupStep();
+            if (step.getParentId() == null && !BEAN_STEP.equals(step.getName())) {
+                phases.add(new String[] {step.getName(), Long.toString(event.getDuration().toMillis())});
+            }
+            if (BEAN_STEP.equals(step.getName())) {
+                long self = event.getDuration().toNanos() - childNanos.getOrDefault(step.getId(), 0L);
+                beans.add(new Object[] {tag(step, "beanName"), self});
+            }
+        }
+        report.append("\n  phases (ms):");
+        for (String[] phase : phases) {
+            report.append("\n    ").append(phase[1]).append('\t').append(phase[0]);
+        }
+        beans.sort((a, b) -> Long.compare((Long) b[1], (Long) a[1]));
+        report.append("\n  slowest beans, excluding dependencies (ms):");
+        for (Object[] bean : beans.subList(0, Math.min(topBeans, beans.size()))) {
+            report.append("\n    ").append(TimeUnit.NANOSECONDS.toMillis((Long) bean[1])).append('\t').append(bean[0]);
+        }
+    }
+
+    private static String tag(StartupStep step, String key) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (key.equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+}
@@ -0,0 +1,49 @@
+package com.faceattendance.config;
+
+/**
+ * Token bucket refilled lazily from the elapsed time on each call
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long updatedAt;
+    private long lastUsedAt;
+
+    TokenBucket(double capacity, double refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.tokens = capacity;
+        this.updatedAt = now;
+        this.lastUsedAt = now;
+    }
+
+    /**
+     * Take one token if available
+     *
+     * @return 0 if a token was taken, otherwise nanoseconds until one will be
+     */
+    synchronized long tryConsume(long now) {
+        refill(now);
+        lastUsedAt = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return refillPerNano > 0 ? (long) Math.ceil((1 - tokens) / refillPerNano) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Full and unused for at least {@code idleNanos}, so dropping it changes nothing
+     */
+    synchronized boolean isIdle(long now, long idleNanos) {
+        refill(now);
+        return tokens >= capacity && now - lastUsedAt >= idleNanos;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - updatedAt) * refillPerNano);
+        updatedAt = now;
+    }
+}
@@ -3,15 +3,31 @@ package com.faceattendance.controller;
 import com.faceattendance.dto.AttendanceDTO;
 import com.faceattendance.dto.StudentDTO;
 import com.faceattendance.model.AttendanceRecord;
+import com.faceattendance.model.AttendanceSession;
 import com.faceattendance.model.Student;
 import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.AttendanceSessionRepository;
 import com.faceattendance.repository.StudentRepository;
+import com.faceattendance.service.AttendanceSessionService;
+import com.faceattendance.service.BulkEnrollmentService;
+import com.faceattendance.service.CheckInRegistry;
+import com.faceattendance.service.CheckInService;
+import com.faceattendance.service.Descriptors;
+import com.faceattendance.service.EnrollmentService;
 import com.faceattendance.service.FaceRecognitionService;
 import com.faceattendance.service.FileStorageService;
+import com.faceattendance.service.IdempotencyStore;
+import com.faceattendance.service.ImageDecoder;
+import com.faceattendance.service.ImageQualityGate;
+import com.faceattendance.service.RecognitionExecutor;
+import com.faceattendance.service.RosterSyncService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.PathResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -19,10 +35,17 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -33,6 +56,7 @@ public class AttendanceController {
     
     private static final Logger logger = LoggerFactory.getLogger(AttendanceController.class);
     private static final String APP_VERSION = "2.0.0";
+    private static final long OFFLINE_CLOCK_SKEW_SECONDS = 300;
     
     @Autowired
     private StudentRepository studentRepository;
@@ -46,6 +70,54 @@ public class AttendanceController {
     @Autowired
     private FileStorageService fileStorageService;
     
+    @Autowired
+    private CheckInRegistry checkInRegistry;
+    
+    @Autowired
+    private EnrollmentService enrollmentService;
+    
+    @Autowired
+    private BulkEnrollmentService bulkEnrollmentService;
+    
+    @Autowired
+    private ImageDecoder imageDecoder;
+    
+    @Autowired
+    private ImageQualityGate imageQualityGate;
+    
+    @Autowired
+    private RecognitionExecutor recognitionExecutor;
+    
+    @Autowired
+    private CheckInService checkInService;
+    
+    @Autowired
+    private RosterSyncService rosterSyncService;
+    
+    @Autowired
+    private AttendanceSessionService sessionService;
+    
+    @Autowired
+    private AttendanceSessionRepository sessionRepository;
+    
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    
+    @Autowired
+    private Environment environment;
+    
+    @Value("${face.probe.max-side:480}")
+    private int probeMaxSide;
+    
+    @Value("${attendance.embedding.max-thumbnail-bytes:65536}")
+    private int maxThumbnailBytes;
+    
+    @Value("${roster.sync.page-size:1000}")
+    private int rosterPageSize;
+    
+    @Value("${attendance.batch.max-size:500}")
+    private int maxBatchSize;
+    
     @Value("${app.version:2.0.0}")
     private String appVersion;
     
@@ -56,7 +128,7 @@ public class AttendanceController {
     public ResponseEntity<?> healthCheck() {
         try {
             long studentCount = studentRepository.count();
-            long todayAttendance = attendanceRepository.countByAttendanceDate(LocalDate.now());
+            long todayAttendance = attendanceRepository.countPresentByAttendanceDate(LocalDate.now());
             
             return ResponseEntity.ok(Map.of(
                     "status", "ok",
@@ -88,6 +160,8 @@ public class AttendanceController {
                     "version", appVersion,
                     "database", dbConnected ? "connected" : "error",
                     "face_recognition", faceRecognitionLoaded ? "loaded" : "not_loaded",
+                    "request_threads", RecognitionExecutor.isVirtual(Thread.currentThread()) ? "virtual" : "platform",
+                    "recognition_offload", recognitionExecutor.isOffloading(),
                     "timestamp", LocalDateTime.now().toString()
             ));
         } catch (Exception e) {
@@ -105,6 +179,7 @@ public class AttendanceController {
      */
     @PostMapping("/register")
     public ResponseEntity<?> registerStudent(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestParam String student_id,
             @RequestParam String name,
             @RequestParam(required = false) String email,
@@ -112,7 +187,13 @@ public class AttendanceController {
             @RequestParam(required = false, name = "class_section") String classSection,
             @RequestParam(required = false, name = "course") String course,
             @RequestParam(required = false) MultipartFile file) {
-        
+        return idempotencyStore.execute(idempotencyKey, "register",
+                () -> register(student_id, name, email, classForm, classSection, course, file),
+                student_id, name, email, classForm, classSection, course, file);
+    }
+    
+    private ResponseEntity<?> register(String student_id, String name, String email, String classForm,
+                                       String classSection, String course, MultipartFile file) {
         try {
             // Input validation
             if (student_id == null || student_id.trim().isEmpty()) {
@@ -162,8 +243,8 @@ public class AttendanceController {
             }
             
             // Create and save student
-            Student student = new Student(student_id, name, email, finalClassSection, faceImagePath);
-            student = studentRepository.save(student);
+            Student student = enrollmentService.register(
+                    new Student(student_id, name, email, finalClassSection, faceImagePath), faceImagePath);
             
             logger.info("Student {} registered successfully", name);
             
@@ -187,6 +268,64 @@ public class AttendanceController {
         }
     }
     
+    /**
+     * Register many students from a ZIP archive holding manifest.csv and face images.
+     * The archive is the raw request body and is read as a stream; with an
+     * Idempotency-Key it is first spooled to a temporary file so it can be hashed.
+     */
+    @PostMapping(value = "/register/bulk", consumes = {"application/zip", "application/x-zip-compressed", "application/octet-stream"})
+    public ResponseEntity<?> registerStudentsBulk(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            return registerBulk(request::getInputStream);
+        }
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("bulk-enroll-", ".zip");
+            Files.copy(request.getInputStream(), spool, StandardCopyOption.REPLACE_EXISTING);
+            PathResource archive = new PathResource(spool);
+            return idempotencyStore.execute(idempotencyKey, "register-bulk", () -> registerBulk(archive), archive);
+        } catch (IOException e) {
+            logger.error("Error reading bulk enrollment archive: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                    "success", false,
+                    "message", "Error reading archive"
+            ));
+        } finally {
+            if (spool != null) {
+                try {
+                    Files.deleteIfExists(spool);
+                } catch (IOException e) {
+                    logger.warn("Could not delete {}: {}", spool, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private ResponseEntity<?> registerBulk(InputStreamSource archive) {
+        try (InputStream in = archive.getInputStream()) {
+            return ResponseEntity.ok(bulkEnrollmentService.enroll(in));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+            ));
+        } catch (IOException e) {
+            logger.error("Error reading bulk enrollment archive: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                    "success", false,
+                    "message", "Error reading archive"
+            ));
+        } catch (Exception e) {
+            logger.error("Error in bulk enrollment: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error registering students"
+            ));
+        }
+    }
+    
     /**
      * List all students
      */
@@ -214,6 +353,93 @@ public class AttendanceController {
         }
     }
     
+    /**
+     * Roster changes since a version, as a compact binary page (see
+     * {@link RosterSyncService}). Clients pass the returned version back as
+     * "since" and repeat while X-Roster-More is true.
+     */
+    @GetMapping("/students/changes")
+    public ResponseEntity<?> studentChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            int pageSize = limit != null && limit > 0 ? Math.min(limit, rosterPageSize) : rosterPageSize;
+            RosterSyncService.Delta delta = rosterSyncService.changesSince(since, pageSize);
+            logger.debug("Roster sync from {}: {} upserts, {} deletes, now at {}",
+                    since, delta.getUpserts(), delta.getDeletes(), delta.getVersion());
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header("X-Roster-Version", Long.toString(delta.getVersion()))
+                    .header("X-Roster-More", Boolean.toString(delta.hasMore()))
+                    .body(delta.getBody());
+        } catch (Exception e) {
+            logger.error("Error reading roster changes: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error reading roster changes"
+            ));
+        }
+    }
+    
+    /**
+     * Add another enrollment image for an existing student
+     */
+    @PostMapping("/students/{student_id}/faces")
+    public ResponseEntity<?> addStudentFace(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @PathVariable String student_id,
+            @RequestParam(required = false) MultipartFile file) {
+        return idempotencyStore.execute(idempotencyKey, "faces", () -> addFace(student_id, file), student_id, file);
+    }
+    
+    private ResponseEntity<?> addFace(String student_id, MultipartFile file) {
+        try {
+            if (file == null || file.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "message", "Face image is required"
+                ));
+            }
+            Optional<Student> studentOpt = studentRepository.findByStudentId(student_id);
+            if (studentOpt.isEmpty()) {
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Student not found"
+                ));
+            }
+            
+            String imagePath = fileStorageService.saveFaceImage(file,
+                    student_id + "_" + System.currentTimeMillis());
+            if (!enrollmentService.enroll(student_id, studentOpt.get().getClassSection(), imagePath)) {
+                fileStorageService.deleteFile(imagePath);
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Could not extract a face from the image",
+                        "error_type", "invalid_image"
+                ));
+            }
+            
+            logger.info("Added enrollment image for student {}", student_id);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Face image added",
+                    "template_count", enrollmentService.templateCount(student_id)
+            ));
+        } catch (IOException e) {
+            logger.error("Error uploading file: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error uploading file"
+            ));
+        } catch (Exception e) {
+            logger.error("Error adding face image: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error adding face image"
+            ));
+        }
+    }
+    
     /**
      * Delete a student
      */
@@ -229,14 +455,8 @@ public class AttendanceController {
                 ));
             }
             
-            Student student = studentOpt.get();
-            
-            // Delete face image if exists
-            if (student.getFaceImagePath() != null && !student.getFaceImagePath().isEmpty()) {
-                fileStorageService.deleteFile(student.getFaceImagePath());
-            }
-            
-            studentRepository.delete(student);
+            enrollmentService.deleteStudent(studentOpt.get());
+            checkInRegistry.clear(student_id, LocalDate.now());
             logger.info("Student {} deleted", student_id);
             
             return ResponseEntity.ok(Map.of(
@@ -252,6 +472,564 @@ public class AttendanceController {
         }
     }
     
+    /**
+     * Mark attendance from a face image.
+     * An optional student_id hint lets repeat scans be rejected before matching runs,
+     * and an optional class_section or room restricts matching to that section first.
+     */
+    @PostMapping("/attendance")
+    public ResponseEntity<?> markAttendance(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestParam(required = false) MultipartFile file,
+            @RequestParam(required = false, name = "student_id") String studentIdHint,
+            @RequestParam(required = false, name = "class_section") String classSection,
+            @RequestParam(required = false) String room) {
+        return idempotencyStore.execute(idempotencyKey, "attendance",
+                () -> checkInByImage(file, studentIdHint, classSection, room),
+                file, studentIdHint, classSection, room);
+    }
+    
+    private ResponseEntity<?> checkInByImage(MultipartFile file, String studentIdHint, String classSection, String room) {
+        LocalDate today = LocalDate.now();
+        String photoPath = null;
+        
+        try {
+            if (file == null || file.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "message", "Face image is required",
+                        "error_type", "invalid_image"
+                ));
+            }
+            
+            // Fast path: kiosk told us who it expects and they are already in
+            if (studentIdHint != null && !studentIdHint.trim().isEmpty()
+                    && checkInRegistry.isCheckedIn(studentIdHint.trim(), today)) {
+                logger.debug("Duplicate check-in for {} rejected before matching", studentIdHint);
+                return alreadyMarked(studentIdHint.trim(), null);
+            }
+            
+            // Reject unusable frames on a reduced-scale decode before touching disk
+            byte[] data = file.getBytes();
+            ImageDecoder.Decoded probe = recognitionExecutor.run(() -> imageDecoder.decode(data, probeMaxSide));
+            if (probe == null) {
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Could not read a face from the image",
+                        "error_type", "invalid_image"
+                ));
+            }
+            ImageQualityGate.Result quality = recognitionExecutor.run(() -> imageQualityGate.check(probe));
+            if (!quality.isAcceptable()) {
+                logger.debug("Check-in frame rejected: {}", quality.getReason());
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", quality.getMessage(),
+                        "error_type", "poor_quality",
+                        "quality", quality.toMap()
+                ));
+            }
+            
+            photoPath = fileStorageService.saveAttendanceImage(file,
+                    "attendance_" + System.currentTimeMillis());
+            
+            String section = resolveSection(classSection, room);
+            Map<String, Object> match = recognitionExecutor.run(
+                    () -> faceRecognitionService.findBestMatch(probe.getImage(), quality.getFace(), section));
+            if (match == null) {
+                fileStorageService.deleteFile(photoPath);
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Face not recognized",
+                        "error_type", "no_match"
+                ));
+            }
+            
+            String studentId = (String) match.get("student_id");
+            double confidence = (Double) match.get("confidence");
+            CheckInService.Outcome outcome = checkInService.record(studentId, confidence, photoPath, today);
+            if (outcome.getStatus() != CheckInService.Outcome.Status.MARKED) {
+                fileStorageService.deleteFile(photoPath);
+            }
+            return checkInResponse(outcome, studentId, confidence, match.get("scope"));
+        } catch (IOException e) {
+            logger.error("Error uploading file: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error uploading file"
+            ));
+        } catch (Exception e) {
+            logger.error("Error marking attendance: {}", e.getMessage(), e);
+            if (photoPath != null) {
+                fileStorageService.deleteFile(photoPath);
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error marking attendance"
+            ));
+        }
+    }
+    
+    /**
+     * Mark attendance from a descriptor computed on the device.
+     * Accepts either an octet-stream body holding the little-endian float32
+     * descriptor optionally followed by a JPEG thumbnail (other parameters in the
+     * query string), or JSON with base64 "descriptor" and "thumbnail" fields.
+     * No image is decoded; the thumbnail is written in the background after the
+     * record is saved.
+     */
+    @PostMapping(value = "/attendance/embedding", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> markAttendanceByEmbedding(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody byte[] body,
+            @RequestParam(required = false, name = "student_id") String studentIdHint,
+            @RequestParam(required = false, name = "class_section") String classSection,
+            @RequestParam(required = false) String room) {
+        
+        int descriptorBytes = Descriptors.LENGTH * Float.BYTES;
+        if (body == null || body.length < descriptorBytes) {
+            return invalidDescriptor();
+        }
+        byte[] descriptor = Arrays.copyOf(body, descriptorBytes);
+        byte[] thumbnail = body.length > descriptorBytes ? Arrays.copyOfRange(body, descriptorBytes, body.length) : null;
+        return idempotencyStore.execute(idempotencyKey, "attendance-embedding",
+                () -> checkInByEmbedding(descriptor, thumbnail, studentIdHint, classSection, room),
+                descriptor, thumbnail, studentIdHint, classSection, room);
+    }
+    
+    @PostMapping(value = "/attendance/embedding", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> markAttendanceByEmbeddingJson(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody Map<String, Object> payload) {
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            Object descriptor = payload.get("descriptor");
+            Object thumbnail = payload.get("thumbnail");
+            if (!(descriptor instanceof String)) {
+                return invalidDescriptor();
+            }
+            byte[] descriptorBytes = base64.decode((String) descriptor);
+            byte[] thumbnailBytes = thumbnail instanceof String ? base64.decode((String) thumbnail) : null;
+            String studentIdHint = (String) payload.get("student_id");
+            String classSection = (String) payload.get("class_section");
+            String room = (String) payload.get("room");
+            return idempotencyStore.execute(idempotencyKey, "attendance-embedding",
+                    () -> checkInByEmbedding(descriptorBytes, thumbnailBytes, studentIdHint, classSection, room),
+                    descriptorBytes, thumbnailBytes, studentIdHint, classSection, room);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Invalid request: " + e.getMessage(),
+                    "error_type", "invalid_descriptor"
+            ));
+        }
+    }
+    
+    /**
+     * Upload check-ins a kiosk matched locally while offline. Each entry holds
+     * student_id, the original ISO-8601 check_in_time and the match confidence;
+     * entries are recorded independently and the result of each is returned in
+     * order, so a kiosk can resend a whole batch after a dropped connection.
+     */
+    @PostMapping("/attendance/batch")
+    public ResponseEntity<?> markAttendanceBatch(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody Map<String, Object> payload) {
+        return idempotencyStore.execute(idempotencyKey, "attendance-batch", () -> checkInBatch(payload), payload);
+    }
+    
+    private ResponseEntity<?> checkInBatch(Map<String, Object> payload) {
+        Object entries = payload.get("check_ins");
+        if (!(entries instanceof List) || ((List<?>) entries).isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "check_ins must be a non-empty list",
+                    "error_type", "invalid_request"
+            ));
+        }
+        List<?> checkIns = (List<?>) entries;
+        if (checkIns.size() > maxBatchSize) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of(
+                    "success", false,
+                    "message", "At most " + maxBatchSize + " check-ins per batch",
+                    "error_type", "invalid_request"
+            ));
+        }
+        
+        try {
+            LocalDateTime latest = LocalDateTime.now().plusSeconds(OFFLINE_CLOCK_SKEW_SECONDS);
+            List<Map<String, Object>> results = new ArrayList<>(checkIns.size());
+            int marked = 0;
+            for (Object entry : checkIns) {
+                Map<String, Object> result = recordOfflineCheckIn(entry, latest);
+                if ("marked".equals(result.get("status"))) {
+                    marked++;
+                }
+                results.add(result);
+            }
+            logger.info("Offline batch: {} of {} check-ins marked", marked, checkIns.size());
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", marked + " of " + checkIns.size() + " check-ins marked",
+                    "marked", marked,
+                    "results", results
+            ));
+        } catch (Exception e) {
+            logger.error("Error marking offline check-ins: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error marking attendance"
+            ));
+        }
+    }
+    
+    private Map<String, Object> recordOfflineCheckIn(Object entry, LocalDateTime latest) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (!(entry instanceof Map)) {
+            result.put("status", "invalid");
+            result.put("message", "Entry must be an object");
+            return result;
+        }
+        Map<?, ?> checkIn = (Map<?, ?>) entry;
+        Object studentId = checkIn.get("student_id");
+        Object time = checkIn.get("check_in_time");
+        Object confidence = checkIn.get("confidence");
+        result.put("student_id", studentId);
+        
+        LocalDateTime checkInTime = null;
+        if (time instanceof String) {
+            try {
+                checkInTime = LocalDateTime.parse((String) time);
+            } catch (DateTimeParseException e) {
+                // reported below
+            }
+        }
+        String problem = null;
+        if (!(studentId instanceof String) || ((String) studentId).trim().isEmpty()) {
+            problem = "student_id is required";
+        } else if (checkInTime == null) {
+            problem = "check_in_time must be an ISO-8601 local date-time";
+        } else if (checkInTime.isAfter(latest)) {
+            problem = "check_in_time is in the future";
+        } else if (!(confidence instanceof Number)
+                || !(((Number) confidence).doubleValue() >= 0 && ((Number) confidence).doubleValue() <= 1)) {
+            problem = "confidence must be between 0 and 1";
+        }
+        if (problem != null) {
+            result.put("status", "invalid");
+            result.put("message", problem);
+            return result;
+        }
+        
+        CheckInService.Outcome outcome = checkInService.record(((String) studentId).trim(),
+                ((Number) confidence).doubleValue(), null, checkInTime);
+        switch (outcome.getStatus()) {
+            case MARKED:
+                result.put("status", "marked");
+                result.put("id", outcome.getRecord().getId());
+                break;
+            case ALREADY_MARKED:
+                result.put("status", "already_marked");
+                break;
+            default:
+                result.put("status", "unknown_student");
+        }
+        return result;
+    }
+    
+    private ResponseEntity<?> checkInByEmbedding(byte[] descriptorBytes, byte[] thumbnail,
+                                                 String studentIdHint, String classSection, String room) {
+        LocalDate today = LocalDate.now();
+        String photoPath = null;
+        try {
+            float[] probe = Descriptors.fromBytes(descriptorBytes);
+            if (probe == null || !isUsable(probe)) {
+                return invalidDescriptor();
+            }
+            if (thumbnail != null && thumbnail.length > maxThumbnailBytes) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of(
+                        "success", false,
+                        "message", "Thumbnail exceeds " + maxThumbnailBytes + " bytes",
+                        "error_type", "invalid_image"
+                ));
+            }
+            
+            if (studentIdHint != null && !studentIdHint.trim().isEmpty()
+                    && checkInRegistry.isCheckedIn(studentIdHint.trim(), today)) {
+                return alreadyMarked(studentIdHint.trim(), null);
+            }
+            
+            String section = resolveSection(classSection, room);
+            Map<String, Object> match = recognitionExecutor.run(
+                    () -> faceRecognitionService.findBestMatch(Descriptors.normalize(probe), section));
+            if (match == null) {
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Face not recognized",
+                        "error_type", "no_match"
+                ));
+            }
+            
+            String studentId = (String) match.get("student_id");
+            double confidence = (Double) match.get("confidence");
+            if (thumbnail != null && thumbnail.length > 0) {
+                photoPath = fileStorageService.reserveAttendanceImage(null, "attendance_" + System.currentTimeMillis());
+            }
+            CheckInService.Outcome outcome = checkInService.record(studentId, confidence, photoPath, today);
+            if (photoPath != null) {
+                if (outcome.getStatus() == CheckInService.Outcome.Status.MARKED) {
+                    Long recordId = outcome.getRecord().getId();
+                    fileStorageService.writeAsync(photoPath, thumbnail, path -> clearPhotoPath(recordId));
+                } else {
+                    fileStorageService.deleteFile(photoPath);
+                }
+            }
+            return checkInResponse(outcome, studentId, confidence, match.get("scope"));
+        } catch (Exception e) {
+            logger.error("Error marking attendance from descriptor: {}", e.getMessage(), e);
+            if (photoPath != null) {
+                fileStorageService.deleteFile(photoPath);
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error marking attendance"
+            ));
+        }
+    }
+    
+    /**
+     * A descriptor must be finite and not all zeros to be normalized and matched
+     */
+    private static boolean isUsable(float[] descriptor) {
+        double norm = 0;
+        for (float v : descriptor) {
+            if (!Float.isFinite(v)) {
+                return false;
+            }
+            norm += v * v;
+        }
+        return norm > 0;
+    }
+    
+    private void clearPhotoPath(Long recordId) {
+        attendanceRepository.findById(recordId).ifPresent(record -> {
+            record.setPhotoPath(null);
+            attendanceRepository.save(record);
+        });
+    }
+    
+    private ResponseEntity<?> invalidDescriptor() {
+        return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Descriptor must be " + Descriptors.LENGTH + " little-endian float32 values",
+                "error_type", "invalid_descriptor"
+        ));
+    }
+    
+    /**
+     * Response for a check-in that matched a student
+     */
+    private ResponseEntity<?> checkInResponse(CheckInService.Outcome outcome, String studentId,
+                                              double confidence, Object scope) {
+        switch (outcome.getStatus()) {
+            case ALREADY_MARKED:
+                return alreadyMarked(studentId, confidence);
+            case UNKNOWN_STUDENT:
+                return ResponseEntity.ok(Map.of(
+                        "success", false,
+                        "message", "Student not found",
+                        "error_type", "no_match"
+                ));
+            default:
+                Student student = outcome.getStudent();
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "message", "Attendance marked for " + student.getName(),
+                        "student_id", studentId,
+                        "confidence", confidence,
+                        "scope", scope,
+                        "attendance", serializeAttendance(outcome.getRecord(), student)
+                ));
+        }
+    }
+    
+    /**
+     * Section to scope matching to: explicit class_section wins, otherwise the
+     * section configured for the kiosk's room under face.gallery.rooms.<room>
+     */
+    private String resolveSection(String classSection, String room) {
+        if (classSection != null && !classSection.trim().isEmpty()) {
+            return classSection.trim();
+        }
+        if (room != null && !room.trim().isEmpty()) {
+            return environment.getProperty("face.gallery.rooms." + room.trim());
+        }
+        return null;
+    }
+    
+    /**
+     * Response for a student who already has today's record
+     */
+    private ResponseEntity<?> alreadyMarked(String studentId, Double confidence) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("already_marked", true);
+        body.put("message", "Attendance already marked today");
+        body.put("error_type", "already_marked");
+        body.put("student_id", studentId);
+        if (confidence != null) {
+            body.put("confidence", confidence);
+        }
+        return ResponseEntity.ok(body);
+    }
+    
+    /**
+     * Open a lecture session for a class section. Takes class_section and
+     * ends_at or duration_minutes; starts_at (ISO-8601 local date-time)
+     * defaults to now. The session closes by itself once ends_at has passed.
+     */
+    @PostMapping("/sessions")
+    public ResponseEntity<?> openSession(@RequestBody Map<String, Object> payload) {
+        Object section = payload.get("class_section");
+        if (!(section instanceof String) || ((String) section).trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "class_section is required",
+                    "error_type", "invalid_request"
+            ));
+        }
+        LocalDateTime startsAt;
+        LocalDateTime endsAt;
+        try {
+            Object start = payload.get("starts_at");
+            Object end = payload.get("ends_at");
+            Object duration = payload.get("duration_minutes");
+            startsAt = start instanceof String ? LocalDateTime.parse((String) start) : LocalDateTime.now();
+            endsAt = end instanceof String ? LocalDateTime.parse((String) end)
+                    : duration instanceof Number ? startsAt.plusMinutes(((Number) duration).longValue()) : null;
+        } catch (DateTimeParseException e) {
+            startsAt = null;
+            endsAt = null;
+        }
+        if (startsAt == null || endsAt == null || !endsAt.isAfter(startsAt)
+                || !endsAt.toLocalDate().equals(startsAt.toLocalDate())) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Give ends_at or duration_minutes; a session must end after it starts, on the same day",
+                    "error_type", "invalid_request"
+            ));
+        }
+        
+        try {
+            AttendanceSession session = sessionService.open(((String) section).trim(), startsAt, endsAt);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Session opened",
+                    "session", serializeSession(session)
+            ));
+        } catch (Exception e) {
+            logger.error("Error opening session: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error opening session"
+            ));
+        }
+    }
+    
+    /**
+     * Sessions starting on a date (default today)
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<?> listSessions(@RequestParam(required = false) String date) {
+        try {
+            LocalDate day = date != null ? LocalDate.parse(date) : LocalDate.now();
+            List<Map<String, Object>> sessions = sessionRepository
+                    .findByStartsAtBetweenOrderByStartsAt(day.atStartOfDay(), day.plusDays(1).atStartOfDay().minusNanos(1))
+                    .stream()
+                    .map(this::serializeSession)
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "sessions", sessions,
+                    "total", sessions.size()
+            ));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "date must be YYYY-MM-DD",
+                    "error_type", "invalid_request"
+            ));
+        } catch (Exception e) {
+            logger.error("Error listing sessions: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error listing sessions"
+            ));
+        }
+    }
+    
+    /**
+     * A session with its section's attendance rows: once closed, an Absent
+     * row for every student missing from this session, and the day's
+     * check-in for everyone else
+     */
+    @GetMapping("/sessions/{id}")
+    public ResponseEntity<?> getSession(@PathVariable Long id) {
+        try {
+            Optional<AttendanceSession> session = sessionRepository.findById(id);
+            if (session.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "success", false,
+                        "message", "Session not found"
+                ));
+            }
+            List<AttendanceDTO> attendance = attendanceRepository
+                    .findWithStudentsBySession(session.get().getStartsAt().toLocalDate(),
+                            session.get().getClassSection(), session.get().getId())
+                    .stream()
+                    .map(row -> serializeAttendance((AttendanceRecord) row[0], (Student) row[1]))
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "session", serializeSession(session.get()),
+                    "attendance", attendance
+            ));
+        } catch (Exception e) {
+            logger.error("Error reading session {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error reading session"
+            ));
+        }
+    }
+    
+    /**
+     * Close a session now and write its absent records
+     */
+    @PostMapping("/sessions/{id}/close")
+    public ResponseEntity<?> closeSession(@PathVariable Long id) {
+        try {
+            AttendanceSession session = sessionService.close(id);
+            if (session == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "success", false,
+                        "message", "Session not found"
+                ));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Session closed",
+                    "session", serializeSession(session)
+            ));
+        } catch (Exception e) {
+            logger.error("Error closing session {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error closing session"
+            ));
+        }
+    }
+    
     /**
      * Helper method to serialize student
      */
@@ -270,11 +1048,32 @@ public class AttendanceController {
         );
     }
     
+    /**
+     * Helper method to serialize a session; open sessions report live presence
+     */
+    private Map<String, Object> serializeSession(AttendanceSession session) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", session.getId());
+        result.put("class_section", session.getClassSection());
+        result.put("starts_at", session.getStartsAt().toString());
+        result.put("ends_at", session.getEndsAt().toString());
+        result.put("status", session.isClosed() ? "closed" : "open");
+        result.put("roster_size", session.getRosterSize());
+        if (session.isClosed()) {
+            result.put("closed_at", session.getClosedAt().toString());
+            result.put("present", session.getPresentCount());
+            result.put("absent", session.getAbsentCount());
+        } else {
+            result.put("present", sessionService.presentCount(session));
+        }
+        return result;
+    }
+    
     /**
      * Helper method to serialize attendance
      */
     private AttendanceDTO serializeAttendance(AttendanceRecord record, Student student) {
-        String status = record.getPhotoPath() == null ? "Absent" : "Present";
+        String status = record.isAbsent() ? "Absent" : "Present";
         String photoUrl = record.getPhotoPath() != null ? 
                 "/" + record.getPhotoPath().replace("\\", "/") : null;
         
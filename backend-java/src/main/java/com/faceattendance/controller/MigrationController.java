@@ -4,6 +4,8 @@ import com.faceattendance.model.AttendanceRecord;
 import com.faceattendance.model.Student;
 import com.faceattendance.repository.AttendanceRecordRepository;
 import com.faceattendance.repository.StudentRepository;
+import com.faceattendance.service.CheckInRegistry;
+import com.faceattendance.service.EnrollmentService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +34,12 @@ public class MigrationController {
     @Autowired
     private AttendanceRecordRepository attendanceRepository;
     
+    @Autowired
+    private CheckInRegistry checkInRegistry;
+    
+    @Autowired
+    private EnrollmentService enrollmentService;
+    
     /**
      * Import attendance records from old backend
      * Expected JSON payload:
@@ -104,7 +112,7 @@ public class MigrationController {
             
             // Check for duplicate
             Optional<AttendanceRecord> existing = attendanceRepository
-                    .findByStudentIdAndAttendanceDate(studentId, attendanceDate);
+                    .findByStudentIdAndAttendanceDateAndSessionId(studentId, attendanceDate, AttendanceRecord.NO_SESSION);
             
             if (existing.isPresent()) {
                 logger.warn("Attendance record already exists for {} on {}", studentId, attendanceDate);
@@ -123,6 +131,7 @@ public class MigrationController {
             record.setConfidence(confidence);
             
             record = attendanceRepository.save(record);
+            checkInRegistry.markCheckedIn(studentId, attendanceDate);
             
             logger.info("Attendance record imported for {} on {}", studentId, attendanceDate);
             
@@ -155,10 +164,8 @@ public class MigrationController {
             }
             
             long recordsDeleted = attendanceRepository.count();
-            long studentsDeleted = studentRepository.count();
-            
-            attendanceRepository.deleteAll();
-            studentRepository.deleteAll();
+            long studentsDeleted = enrollmentService.deleteAllStudents();
+            checkInRegistry.reset();
             
             logger.warn("All data cleared: {} attendance records, {} students", recordsDeleted, studentsDeleted);
             
@@ -0,0 +1,57 @@
+package com.faceattendance.controller;
+
+import com.faceattendance.service.PhotoArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves face images and check-in photos at the paths returned as
+ * face_image_url and photo_url, including photos already packed into month
+ * segments
+ */
+@RestController
+@RequestMapping("/uploads")
+public class PhotoController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoController.class);
+
+    @Autowired
+    private PhotoArchive photoArchive;
+
+    @GetMapping("/{directory}/{filename:.+}")
+    public ResponseEntity<?> getPhoto(@PathVariable String directory, @PathVariable String filename) {
+        try {
+            byte[] data = photoArchive.read(directory, filename);
+            if (data == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "success", false,
+                        "message", "Photo not found"
+                ));
+            }
+            // Filenames are never reused, so clients may keep a photo
+            return ResponseEntity.ok()
+                    .contentType(MediaTypeFactory.getMediaType(filename).orElse(MediaType.IMAGE_JPEG))
+                    .cacheControl(CacheControl.maxAge(7, TimeUnit.DAYS))
+                    .body(data);
+        } catch (Exception e) {
+            logger.error("Error reading photo {}/{}: {}", directory, filename, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "Error reading photo"
+            ));
+        }
+    }
+}
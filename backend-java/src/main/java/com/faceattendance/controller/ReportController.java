@@ -0,0 +1,111 @@
+package com.faceattendance.controller;
+
+import com.faceattendance.service.AttendanceMatrixService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportController.class);
+
+    @Autowired
+    private AttendanceMatrixService matrixService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Students x days attendance grid for a month (YYYY-MM, default this
+     * month) and class section (default every student), streamed as JSON or,
+     * with format=csv, as a CSV download
+     */
+    @GetMapping("/matrix")
+    public ResponseEntity<StreamingResponseBody> attendanceMatrix(
+            @RequestParam(required = false) String section,
+            @RequestParam(required = false) String month,
+            @RequestParam(defaultValue = "json") String format) {
+        YearMonth period;
+        try {
+            period = month != null ? YearMonth.parse(month) : YearMonth.now();
+        } catch (DateTimeParseException e) {
+            return error(HttpStatus.BAD_REQUEST, Map.of(
+                    "success", false,
+                    "message", "month must be YYYY-MM",
+                    "error_type", "invalid_request"
+            ));
+        }
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"json".equalsIgnoreCase(format)) {
+            return error(HttpStatus.BAD_REQUEST, Map.of(
+                    "success", false,
+                    "message", "format must be json or csv",
+                    "error_type", "invalid_request"
+            ));
+        }
+        String scope = section != null && !section.trim().isEmpty() ? section.trim() : null;
+        
+        try {
+            AttendanceMatrixService.Matrix matrix = matrixService.build(scope, period);
+            logger.debug("Attendance matrix for {} {}: {} students", scope != null ? scope : "all sections",
+                    period, matrix.getStudentCount());
+            if (csv) {
+                String filename = "attendance-" + (scope != null ? scope.replaceAll("[^A-Za-z0-9_-]", "_") + "-" : "")
+                        + period + ".csv";
+                StreamingResponseBody body = out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    matrix.writeCsv(writer);
+                    writer.flush();
+                };
+                return ResponseEntity.ok()
+                        .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                        .body(body);
+            }
+            StreamingResponseBody body = out -> {
+                JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+                matrix.writeJson(json, scope);
+                json.flush();
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body);
+        } catch (Exception e) {
+            logger.error("Error building attendance matrix: {}", e.getMessage(), e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, Map.of(
+                    "success", false,
+                    "message", "Error building attendance report"
+            ));
+        }
+    }
+    
+    /**
+     * Error bodies go through the same streaming return type as the report
+     */
+    private ResponseEntity<StreamingResponseBody> error(HttpStatus status, Map<String, Object> body) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, body));
+    }
+}
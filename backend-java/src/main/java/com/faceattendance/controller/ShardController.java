@@ -0,0 +1,82 @@
+package com.faceattendance.controller;
+
+import com.faceattendance.service.Descriptors;
+import com.faceattendance.service.FaceGallery;
+import com.faceattendance.service.ShardAssignment;
+import com.faceattendance.service.ShardClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node-to-node endpoint for sharded matching: searches this node's shard of
+ * the gallery for a probe sent by the node that received the check-in.
+ * Answers 404 on an unsharded node and 403 without the shard secret, since
+ * its raw scores would let a caller tune a descriptor until it matches.
+ */
+@RestController
+@RequestMapping("/api/internal/shards")
+public class ShardController {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ShardController.class);
+    private static final int MAX_K = 50;
+    
+    @Autowired
+    private FaceGallery faceGallery;
+    
+    @Autowired
+    private ShardAssignment shardAssignment;
+    
+    @Autowired
+    private ShardClient shardClient;
+    
+    /**
+     * Top-K matches in this shard for a 512-byte little-endian descriptor
+     */
+    @PostMapping(value = "/match", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> match(
+            @RequestBody byte[] body,
+            @RequestParam(defaultValue = "3") int k,
+            @RequestParam(required = false) String section,
+            @RequestHeader(value = ShardClient.SECRET_HEADER, required = false) String secret) {
+        if (!shardAssignment.isSharded()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!shardClient.isSecretValid(secret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                    "success", false,
+                    "message", "Invalid shard secret"
+            ));
+        }
+        float[] probe = Descriptors.fromBytes(body);
+        if (probe == null) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Descriptor must be " + Descriptors.LENGTH + " little-endian float32 values",
+                    "error_type", "invalid_descriptor"
+            ));
+        }
+        
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (FaceGallery.Match match : faceGallery.matchTopK(probe, section, Math.max(1, Math.min(k, MAX_K)))) {
+            matches.add(Map.of(
+                    "student_id", match.getStudentId(),
+                    "similarity", match.getSimilarity()
+            ));
+        }
+        logger.debug("Shard {} answered with {} matches", shardAssignment.getIndex(), matches.size());
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "shard", shardAssignment.getIndex(),
+                "matches", matches
+        ));
+    }
+}
@@ -4,12 +4,20 @@ import jakarta.persistence.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
+/**
+ * A student's check-in for a day (session id 0, one per student and day), or
+ * their absence from one lecture session, written when the session closes
+ * (one per student and session)
+ */
 @Entity
 @Table(name = "attendance_records", uniqueConstraints = {
-    @UniqueConstraint(columnNames = {"student_id", "attendance_date"}, name = "uix_student_date")
+    @UniqueConstraint(columnNames = {"student_id", "attendance_date", "session_id"}, name = "uix_student_date_session")
 })
 public class AttendanceRecord {
     
+    /** Session id of a day's check-in */
+    public static final long NO_SESSION = 0L;
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -29,13 +37,18 @@ public class AttendanceRecord {
     @Column(name = "confidence")
     private Double confidence;
     
+    @Column(name = "session_id", nullable = false, columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long sessionId = NO_SESSION;
+    
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "student_id", insertable = false, updatable = false)
+    @JoinColumn(name = "student_id", referencedColumnName = "student_id", insertable = false, updatable = false)
     private Student student;
     
     @PrePersist
     protected void onCreate() {
-        checkInTime = LocalDateTime.now();
+        if (checkInTime == null) {
+            checkInTime = LocalDateTime.now();
+        }
         if (attendanceDate == null) {
             attendanceDate = LocalDate.now();
         }
@@ -51,6 +64,12 @@ public class AttendanceRecord {
         this.confidence = confidence;
     }
     
+    /**
+     * Absent records are written when a session closes and carry neither a
+     * photo nor a confidence; recognized check-ins always have a confidence
+     */
+    public boolean isAbsent() { return photoPath == null && confidence == null; }
+    
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -70,6 +89,9 @@ public class AttendanceRecord {
     public Double getConfidence() { return confidence; }
     public void setConfidence(Double confidence) { this.confidence = confidence; }
     
+    public long getSessionId() { return sessionId; }
+    public void setSessionId(long sessionId) { this.sessionId = sessionId; }
+    
     public Student getStudent() { return student; }
     public void setStudent(Student student) { this.student = student; }
 }
@@ -0,0 +1,79 @@
+package com.faceattendance.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A lecture: one class section over a time window. A student is present when
+ * their check-in for the day falls in the window or a later scan was recorded
+ * as a {@link SessionCheckIn}; closing the session writes an absent
+ * attendance record, tagged with the session id, for every other student of
+ * the section and fills in the counts.
+ */
+@Entity
+@Table(name = "attendance_sessions", indexes = {
+    @Index(columnList = "class_section, starts_at", name = "idx_session_section_start")
+})
+public class AttendanceSession {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "class_section", nullable = false)
+    private String classSection;
+    
+    @Column(name = "starts_at", nullable = false)
+    private LocalDateTime startsAt;
+    
+    @Column(name = "ends_at", nullable = false)
+    private LocalDateTime endsAt;
+    
+    @Column(name = "closed_at")
+    private LocalDateTime closedAt;
+    
+    @Column(name = "roster_size")
+    private Integer rosterSize;
+    
+    @Column(name = "present_count")
+    private Integer presentCount;
+    
+    @Column(name = "absent_count")
+    private Integer absentCount;
+    
+    // Constructors
+    public AttendanceSession() {}
+    
+    public AttendanceSession(String classSection, LocalDateTime startsAt, LocalDateTime endsAt) {
+        this.classSection = classSection;
+        this.startsAt = startsAt;
+        this.endsAt = endsAt;
+    }
+    
+    public boolean isClosed() { return closedAt != null; }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getClassSection() { return classSection; }
+    public void setClassSection(String classSection) { this.classSection = classSection; }
+    
+    public LocalDateTime getStartsAt() { return startsAt; }
+    public void setStartsAt(LocalDateTime startsAt) { this.startsAt = startsAt; }
+    
+    public LocalDateTime getEndsAt() { return endsAt; }
+    public void setEndsAt(LocalDateTime endsAt) { this.endsAt = endsAt; }
+    
+    public LocalDateTime getClosedAt() { return closedAt; }
+    public void setClosedAt(LocalDateTime closedAt) { this.closedAt = closedAt; }
+    
+    public Integer getRosterSize() { return rosterSize; }
+    public void setRosterSize(Integer rosterSize) { this.rosterSize = rosterSize; }
+    
+    public Integer getPresentCount() { return presentCount; }
+    public void setPresentCount(Integer presentCount) { this.presentCount = presentCount; }
+    
+    public Integer getAbsentCount() { return absentCount; }
+    public void setAbsentCount(Integer absentCount) { this.absentCount = absentCount; }
+}
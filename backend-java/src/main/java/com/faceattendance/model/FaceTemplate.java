@@ -0,0 +1,62 @@
+package com.faceattendance.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One enrollment descriptor for a student. A student may hold several,
+ * e.g. from photos taken under different lighting or angles.
+ */
+@Entity
+@Table(name = "face_templates", indexes = {
+    @Index(columnList = "student_id", name = "idx_face_template_student")
+})
+public class FaceTemplate {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "student_id", nullable = false)
+    private String studentId;
+    
+    @Lob
+    @Column(name = "descriptor", nullable = false)
+    private byte[] descriptor;
+    
+    @Column(name = "image_path")
+    private String imagePath;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    // Constructors
+    public FaceTemplate() {}
+    
+    public FaceTemplate(String studentId, byte[] descriptor, String imagePath) {
+        this.studentId = studentId;
+        this.descriptor = descriptor;
+        this.imagePath = imagePath;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getStudentId() { return studentId; }
+    public void setStudentId(String studentId) { this.studentId = studentId; }
+    
+    public byte[] getDescriptor() { return descriptor; }
+    public void setDescriptor(byte[] descriptor) { this.descriptor = descriptor; }
+    
+    public String getImagePath() { return imagePath; }
+    public void setImagePath(String imagePath) { this.imagePath = imagePath; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
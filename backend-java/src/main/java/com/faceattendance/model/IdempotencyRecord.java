@@ -0,0 +1,65 @@
+package com.faceattendance.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Response saved for an Idempotency-Key so a retry after a restart still gets
+ * the original answer
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+    @Index(columnList = "created_at", name = "idx_idempotency_created")
+})
+public class IdempotencyRecord {
+    
+    @Id
+    @Column(name = "idempotency_key", length = 320)
+    private String key;
+    
+    @Column(name = "fingerprint", length = 64)
+    private String fingerprint;
+    
+    @Column(name = "status", nullable = false)
+    private int status;
+    
+    @Lob
+    @Column(name = "body")
+    private String body;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+    
+    // Constructors
+    public IdempotencyRecord() {}
+    
+    public IdempotencyRecord(String key, String fingerprint, int status, String body) {
+        this.key = key;
+        this.fingerprint = fingerprint;
+        this.status = status;
+        this.body = body;
+    }
+    
+    // Getters and Setters
+    public String getKey() { return key; }
+    public void setKey(String key) { this.key = key; }
+    
+    public String getFingerprint() { return fingerprint; }
+    public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+    
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+    
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
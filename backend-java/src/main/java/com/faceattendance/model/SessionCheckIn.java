@@ -0,0 +1,45 @@
+package com.faceattendance.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A student seen during an open session by a scan that is not their first
+ * check-in of the day (that one is already an attendance record). Kept in the
+ * database so the node that closes the session counts scans taken on others.
+ */
+@Entity
+@Table(name = "session_check_ins", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"session_id", "student_id"}, name = "uix_session_student")
+})
+public class SessionCheckIn {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "session_id", nullable = false)
+    private Long sessionId;
+    
+    @Column(name = "student_id", nullable = false)
+    private String studentId;
+    
+    @Column(name = "check_in_time", nullable = false)
+    private LocalDateTime checkInTime;
+    
+    // Constructors
+    public SessionCheckIn() {}
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getSessionId() { return sessionId; }
+    public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+    
+    public String getStudentId() { return studentId; }
+    public void setStudentId(String studentId) { this.studentId = studentId; }
+    
+    public LocalDateTime getCheckInTime() { return checkInTime; }
+    public void setCheckInTime(LocalDateTime checkInTime) { this.checkInTime = checkInTime; }
+}
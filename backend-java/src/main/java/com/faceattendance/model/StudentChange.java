@@ -0,0 +1,62 @@
+package com.faceattendance.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One change to a student's roster entry or templates. The generated id is the
+ * roster change sequence: every write gets a higher id than any before it, so
+ * the students in the rows above a version are exactly those changed since
+ * then. Deleted students keep a row as a tombstone. Rows are written in the
+ * same transaction as the change itself and also serve as the outbox other
+ * nodes replicate from, so every write keeps its own row; superseded rows are
+ * pruned only once they are older than {@code roster.sync.retention-ms}.
+ * {@code changedAt} is taken from the database clock, not the writing node's.
+ */
+@Entity
+@Table(name = "student_changes", indexes = {
+    @Index(columnList = "student_id", name = "idx_student_change_student")
+})
+public class StudentChange {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "student_id", nullable = false)
+    private String studentId;
+    
+    @Column(name = "origin")
+    private String origin;
+    
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (changedAt == null) {
+            changedAt = LocalDateTime.now();
+        }
+    }
+    
+    // Constructors
+    public StudentChange() {}
+    
+    public StudentChange(String studentId, String origin) {
+        this.studentId = studentId;
+        this.origin = origin;
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public String getStudentId() { return studentId; }
+    public void setStudentId(String studentId) { this.studentId = studentId; }
+    
+    public String getOrigin() { return origin; }
+    public void setOrigin(String origin) { this.origin = origin; }
+    
+    public LocalDateTime getChangedAt() { return changedAt; }
+    public void setChangedAt(LocalDateTime changedAt) { this.changedAt = changedAt; }
+}
@@ -2,6 +2,9 @@ package com.faceattendance.repository;
 
 import com.faceattendance.model.AttendanceRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -10,9 +13,48 @@ import java.util.Optional;
 
 @Repository
 public interface AttendanceRecordRepository extends JpaRepository<AttendanceRecord, Long> {
-    Optional<AttendanceRecord> findByStudentIdAndAttendanceDate(String studentId, LocalDate attendanceDate);
+    Optional<AttendanceRecord> findByStudentIdAndAttendanceDateAndSessionId(String studentId, LocalDate attendanceDate,
+                                                                           long sessionId);
     List<AttendanceRecord> findByAttendanceDateBetween(LocalDate startDate, LocalDate endDate);
     List<AttendanceRecord> findByStudentIdAndAttendanceDateBetween(String studentId, LocalDate startDate, LocalDate endDate);
     List<AttendanceRecord> findByAttendanceDate(LocalDate attendanceDate);
     long countByAttendanceDate(LocalDate attendanceDate);
+    
+    @Query("SELECT COUNT(a) FROM AttendanceRecord a WHERE a.attendanceDate = :date"
+            + " AND (a.photoPath IS NOT NULL OR a.confidence IS NOT NULL)")
+    long countPresentByAttendanceDate(@Param("date") LocalDate date);
+    
+    @Query("SELECT a.studentId, a.checkInTime FROM AttendanceRecord a JOIN a.student s"
+            + " WHERE a.attendanceDate = :date AND s.classSection = :section"
+            + " AND (a.photoPath IS NOT NULL OR a.confidence IS NOT NULL)")
+    List<Object[]> findPresentCheckInsBySection(@Param("date") LocalDate date, @Param("section") String section);
+    
+    /**
+     * The section's rows for one session: its absent records, and the day's
+     * check-ins of everyone else
+     */
+    @Query("SELECT a, s FROM AttendanceRecord a JOIN a.student s"
+            + " WHERE a.attendanceDate = :date AND s.classSection = :section"
+            + " AND (a.sessionId = :sessionId OR (a.sessionId = 0 AND NOT EXISTS (SELECT 1 FROM AttendanceRecord b"
+            + " WHERE b.studentId = a.studentId AND b.attendanceDate = :date AND b.sessionId = :sessionId)))"
+            + " ORDER BY s.name")
+    List<Object[]> findWithStudentsBySession(@Param("date") LocalDate date, @Param("section") String section,
+                                             @Param("sessionId") long sessionId);
+    
+    @Query("SELECT a.photoPath FROM AttendanceRecord a WHERE a.studentId = :studentId AND a.photoPath IS NOT NULL")
+    List<String> findPhotoPathsByStudentId(@Param("studentId") String studentId);
+    
+    @Query("SELECT a.photoPath FROM AttendanceRecord a WHERE a.photoPath IS NOT NULL")
+    List<String> findAllPhotoPaths();
+    
+    @Query("SELECT a.photoPath, a.attendanceDate FROM AttendanceRecord a WHERE a.photoPath IS NOT NULL")
+    List<Object[]> findPhotoPathsWithDates();
+    
+    @Modifying
+    @Query("DELETE FROM AttendanceRecord a WHERE a.studentId = :studentId")
+    int deleteByStudentId(@Param("studentId") String studentId);
+    
+    @Modifying
+    @Query("DELETE FROM AttendanceRecord a")
+    int deleteAllRecords();
 }
@@ -0,0 +1,24 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.AttendanceSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface AttendanceSessionRepository extends JpaRepository<AttendanceSession, Long> {
+    List<AttendanceSession> findByClosedAtIsNull();
+    List<AttendanceSession> findByStartsAtBetweenOrderByStartsAt(LocalDateTime from, LocalDateTime to);
+    
+    /**
+     * Closed sessions whose window, opened early by up to latestStart - time, contains the time
+     */
+    @Query("SELECT s FROM AttendanceSession s WHERE s.closedAt IS NOT NULL"
+            + " AND s.startsAt <= :latestStart AND s.endsAt >= :time")
+    List<AttendanceSession> findClosedContaining(@Param("time") LocalDateTime time,
+                                                 @Param("latestStart") LocalDateTime latestStart);
+}
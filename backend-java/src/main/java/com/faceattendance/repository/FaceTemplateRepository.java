@@ -0,0 +1,30 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.FaceTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface FaceTemplateRepository extends JpaRepository<FaceTemplate, Long> {
+    List<FaceTemplate> findByStudentId(String studentId);
+    List<FaceTemplate> findByStudentIdInOrderByIdAsc(Collection<String> studentIds);
+    long countByStudentId(String studentId);
+    
+    @Query("SELECT t.imagePath FROM FaceTemplate t WHERE t.studentId = :studentId AND t.imagePath IS NOT NULL")
+    List<String> findImagePathsByStudentId(@Param("studentId") String studentId);
+    
+    @Query("SELECT t.imagePath FROM FaceTemplate t WHERE t.imagePath IS NOT NULL")
+    List<String> findAllImagePaths();
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FaceTemplate t WHERE t.studentId = :studentId")
+    int deleteByStudentId(@Param("studentId") String studentId);
+}
@@ -0,0 +1,15 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.SessionCheckIn;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SessionCheckInRepository extends JpaRepository<SessionCheckIn, Long> {
+    @Query("SELECT c.studentId FROM SessionCheckIn c WHERE c.sessionId = :sessionId")
+    List<String> findStudentIdsBySessionId(@Param("sessionId") Long sessionId);
+}
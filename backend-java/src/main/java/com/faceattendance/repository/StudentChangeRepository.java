@@ -0,0 +1,42 @@
+package com.faceattendance.repository;
+
+import com.faceattendance.model.StudentChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StudentChangeRepository extends JpaRepository<StudentChange, Long> {
+    List<StudentChange> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    Optional<StudentChange> findFirstByIdGreaterThanOrderByIdAsc(Long id);
+    
+    @Query("SELECT MAX(c.id) FROM StudentChange c")
+    Long findMaxId();
+    
+    @Query("SELECT MAX(c.id) FROM StudentChange c WHERE c.id < :id")
+    Long findMaxIdBefore(@Param("id") long id);
+    
+    @Query("SELECT MIN(c.id) FROM StudentChange c WHERE c.changedAt > :cutoff")
+    Long findMinIdChangedAfter(@Param("cutoff") LocalDateTime cutoff);
+    
+    @Query("SELECT DISTINCT c.studentId FROM StudentChange c WHERE c.id > :since")
+    List<String> findStudentIdsChangedSince(@Param("since") long since);
+    
+    @Query("SELECT s.studentId FROM Student s WHERE s.studentId NOT IN (SELECT c.studentId FROM StudentChange c)")
+    List<String> findUnloggedStudentIds();
+    
+    @Query("SELECT LOCAL DATETIME")
+    LocalDateTime findDatabaseTime();
+    
+    @Modifying
+    @Query("DELETE FROM StudentChange c WHERE c.changedAt < :cutoff AND EXISTS"
+            + " (SELECT n.id FROM StudentChange n WHERE n.studentId = c.studentId AND n.id > c.id)")
+    int deleteSupersededBefore(@Param("cutoff") LocalDateTime cutoff);
+}
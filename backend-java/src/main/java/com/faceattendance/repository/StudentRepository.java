@@ -2,11 +2,40 @@ package com.faceattendance.repository;
 
 import com.faceattendance.model.Student;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface StudentRepository extends JpaRepository<Student, Long> {
     Optional<Student> findByStudentId(String studentId);
+    List<Student> findByStudentIdIn(Collection<String> studentIds);
+    
+    @Query("SELECT s.studentId FROM Student s")
+    List<String> findAllStudentIds();
+    
+    @Query("SELECT s.studentId FROM Student s WHERE s.classSection = :classSection")
+    List<String> findStudentIdsByClassSection(@Param("classSection") String classSection);
+    
+    @Query("SELECT s.studentId FROM Student s WHERE s.studentId IN :studentIds")
+    List<String> findExistingStudentIds(@Param("studentIds") Collection<String> studentIds);
+    
+    @Query("SELECT s.studentId, s.classSection, s.faceImagePath FROM Student s")
+    List<Object[]> findEnrollmentSummaries();
+    
+    @Query("SELECT s.faceImagePath FROM Student s WHERE s.faceImagePath IS NOT NULL")
+    List<String> findAllFaceImagePaths();
+    
+    /**
+     * Bulk delete; skips the attendance cascade, so delete the student's
+     * attendance records first
+     */
+    @Modifying
+    @Query("DELETE FROM Student s WHERE s.studentId = :studentId")
+    int deleteByStudentId(@Param("studentId") String studentId);
 }
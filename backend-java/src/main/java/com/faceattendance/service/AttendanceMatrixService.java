@@ -0,0 +1,246 @@
+package com.faceattendance.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+/**
+ * Students x days attendance grid for one month. Each student's month is a
+ * single {@code long} with bit d-1 set for day d, filled from one streamed
+ * projection over students left-joined to the month's records, so no entity
+ * or per-record object is created. Totals, per-day counts and streaks are
+ * computed with bit operations on those words.
+ *
+ * A day counts as a class day when any student of the selection has a record
+ * for it, present or absent; on class days a student without a present
+ * record is absent, other days are left blank. Streaks run over class days
+ * only, so weekends and holidays do not break them.
+ */
+@Service
+public class AttendanceMatrixService {
+
+    private static final String SELECT =
+            "SELECT s.id, s.student_id, s.name, EXTRACT(DAY FROM a.attendance_date),"
+            + " CASE WHEN a.photo_path IS NOT NULL OR a.confidence IS NOT NULL THEN 1 ELSE 0 END"
+            + " FROM students s LEFT JOIN attendance_records a ON a.student_id = s.student_id"
+            + " AND a.attendance_date BETWEEN ? AND ?";
+    // Primary key order lets H2 stream the join without sorting (and spilling) it
+    private static final String ORDER = " ORDER BY s.id";
+    private static final int FETCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * The month's grid, one row per student ordered by name
+     */
+    public static final class Matrix {
+        private final YearMonth month;
+        private final int days;
+        private String[] studentIds = new String[64];
+        private String[] names = new String[64];
+        private long[] present = new long[64];
+        private long classDays;
+        private int size;
+        private Integer[] byName;
+
+        Matrix(YearMonth month) {
+            this.month = month;
+            this.days = month.lengthOfMonth();
+        }
+
+        private void addStudent(String studentId, String name) {
+            if (size == present.length) {
+                int capacity = size * 2;
+                studentIds = Arrays.copyOf(studentIds, capacity);
+                names = Arrays.copyOf(names, capacity);
+                present = Arrays.copyOf(present, capacity);
+            }
+            studentIds[size] = studentId;
+            names[size] = name;
+            size++;
+        }
+
+        private void sortByName() {
+            byName = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                byName[i] = i;
+            }
+            // Stable, so equal names stay in enrollment order
+            Arrays.sort(byName, (a, b) -> names[a].compareTo(names[b]));
+        }
+
+        public YearMonth getMonth() { return month; }
+        public int getStudentCount() { return size; }
+
+        /** Present count per day, index 0 = day 1 */
+        private int[] dailyTotals() {
+            int[] totals = new int[days];
+            for (int i = 0; i < size; i++) {
+                for (long word = present[i]; word != 0; word &= word - 1) {
+                    totals[Long.numberOfTrailingZeros(word)]++;
+                }
+            }
+            return totals;
+        }
+
+        /**
+         * Write the grid as CSV: P / A / blank per day, then present days,
+         * absent days and longest streak; a last row holds per-day totals
+         */
+        public void writeCsv(Writer out) throws IOException {
+            out.write("student_id,name");
+            for (int day = 1; day <= days; day++) {
+                out.write(',');
+                out.write(Integer.toString(day));
+            }
+            out.write(",present,absent,longest_streak\n");
+            for (int i : byName) {
+                writeCsvField(out, studentIds[i]);
+                out.write(',');
+                writeCsvField(out, names[i]);
+                long word = present[i];
+                for (int day = 0; day < days; day++) {
+                    out.write(',');
+                    long bit = 1L << day;
+                    if ((word & bit) != 0) {
+                        out.write('P');
+                    } else if ((classDays & bit) != 0) {
+                        out.write('A');
+                    }
+                }
+                out.write(',');
+                out.write(Integer.toString(Long.bitCount(word)));
+                out.write(',');
+                out.write(Integer.toString(Long.bitCount(classDays & ~word)));
+                out.write(',');
+                out.write(Integer.toString(longestStreak(word, classDays)));
+                out.write('\n');
+            }
+            out.write(",Total");
+            for (int total : dailyTotals()) {
+                out.write(',');
+                out.write(Integer.toString(total));
+            }
+            out.write(",,,\n");
+        }
+
+        /**
+         * Write the grid as JSON with the present days of each student listed
+         */
+        public void writeJson(JsonGenerator json, String section) throws IOException {
+            json.writeStartObject();
+            json.writeBooleanField("success", true);
+            json.writeStringField("section", section);
+            json.writeStringField("month", month.toString());
+            json.writeNumberField("days", days);
+            json.writeArrayFieldStart("class_days");
+            for (long word = classDays; word != 0; word &= word - 1) {
+                json.writeNumber(Long.numberOfTrailingZeros(word) + 1);
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("students");
+            for (int i : byName) {
+                long word = present[i];
+                json.writeStartObject();
+                json.writeStringField("student_id", studentIds[i]);
+                json.writeStringField("name", names[i]);
+                json.writeArrayFieldStart("present_days");
+                for (long bits = word; bits != 0; bits &= bits - 1) {
+                    json.writeNumber(Long.numberOfTrailingZeros(bits) + 1);
+                }
+                json.writeEndArray();
+                json.writeNumberField("present", Long.bitCount(word));
+                json.writeNumberField("absent", Long.bitCount(classDays & ~word));
+                json.writeNumberField("longest_streak", longestStreak(word, classDays));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("daily_totals");
+            for (int total : dailyTotals()) {
+                json.writeNumber(total);
+            }
+            json.writeEndArray();
+            json.writeNumberField("total", size);
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Build the grid for a month, for one class section or every student
+     * when section is null
+     */
+    public Matrix build(String section, YearMonth month) {
+        Matrix matrix = new Matrix(month);
+        long[] lastId = {Long.MIN_VALUE};
+        Date from = Date.valueOf(month.atDay(1));
+        Date to = Date.valueOf(month.atEndOfMonth());
+        String sql = section != null ? SELECT + " WHERE s.class_section = ?" + ORDER : SELECT + ORDER;
+        Object[] args = section != null ? new Object[] {from, to, section} : new Object[] {from, to};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            // Rows arrive grouped by student; strings are read once per student
+            long id = rs.getLong(1);
+            if (id != lastId[0]) {
+                matrix.addStudent(rs.getString(2), rs.getString(3));
+                lastId[0] = id;
+            }
+            int day = rs.getInt(4);
+            if (!rs.wasNull()) {
+                long bit = 1L << (day - 1);
+                matrix.classDays |= bit;
+                if (rs.getInt(5) == 1) {
+                    matrix.present[matrix.size - 1] |= bit;
+                }
+            }
+        });
+        matrix.sortByName();
+        return matrix;
+    }
+
+    /**
+     * Longest run of present class days: days that are not class days are
+     * filled in so they join runs, then each run counts only its present days
+     */
+    static int longestStreak(long present, long classDays) {
+        long filled = present | ~classDays;
+        int longest = 0;
+        while (filled != 0) {
+            int start = Long.numberOfTrailingZeros(filled);
+            long shifted = ~(filled >>> start);
+            int length = shifted == 0 ? Long.SIZE - start : Long.numberOfTrailingZeros(shifted);
+            long run = length == Long.SIZE ? -1L : ((1L << length) - 1) << start;
+            longest = Math.max(longest, Long.bitCount(run & present));
+            filled &= ~run;
+        }
+        return longest;
+    }
+
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,361 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.AttendanceSession;
+import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.AttendanceSessionRepository;
+import com.faceattendance.repository.SessionCheckInRepository;
+import com.faceattendance.repository.StudentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lecture sessions and their presence. A student is present in a session when
+ * their check-in for the day falls in its window, or when a later scan inside
+ * the window was recorded in {@code session_check_ins}. Closing a session
+ * writes, in one statement, an absent record tagged with the session id for
+ * every other student of the section, so reports read rows instead of diffing
+ * the roster against the day's check-ins.
+ *
+ * Presence lives in the database, so any node may record scans and close a
+ * session. Each node keeps the open sessions (refreshed every
+ * {@code attendance.sessions.refresh-ms}) with their roster as a sorted array
+ * and a bitmap of students it has already recorded, so repeat scans cost no
+ * database round-trip. Closing and recording take the session row's lock:
+ * a scan that loses the race to a close turns its absent record back into
+ * presence, and of two nodes closing the same session only the first writes.
+ *
+ * The day's check-in stays one row per student and date (session id 0); a
+ * session's absent records are one per student and session, so a student
+ * present in a morning lecture is still marked absent from a missed afternoon
+ * one. An offline check-in uploaded after a session closed clears its absence.
+ */
+@Service
+public class AttendanceSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttendanceSessionService.class);
+
+    // Present: a scan recorded for the session, or the day's check-in inside the window
+    // (parameters: session id, date, window start, window end)
+    private static final String PRESENT =
+            "(EXISTS (SELECT 1 FROM session_check_ins c WHERE c.session_id = ? AND c.student_id = s.student_id)"
+            + " OR EXISTS (SELECT 1 FROM attendance_records a WHERE a.student_id = s.student_id"
+            + " AND a.attendance_date = ? AND a.session_id = 0"
+            + " AND (a.photo_path IS NOT NULL OR a.confidence IS NOT NULL)"
+            + " AND a.check_in_time BETWEEN ? AND ?))";
+    private static final String INSERT_ABSENT =
+            "INSERT INTO attendance_records (student_id, attendance_date, check_in_time, session_id)"
+            + " SELECT s.student_id, ?, ?, ? FROM students s WHERE s.class_section = ? AND NOT " + PRESENT;
+    private static final String COUNT_ROSTER = "SELECT COUNT(*) FROM students s WHERE s.class_section = ?";
+    private static final String COUNT_PRESENT = COUNT_ROSTER + " AND " + PRESENT;
+    private static final String LOCK_SESSION = "SELECT closed_at FROM attendance_sessions WHERE id = ? FOR UPDATE";
+    private static final String INSERT_CHECK_IN =
+            "INSERT INTO session_check_ins (session_id, student_id, check_in_time)"
+            + " SELECT CAST(? AS BIGINT), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP) WHERE NOT EXISTS"
+            + " (SELECT 1 FROM session_check_ins WHERE session_id = ? AND student_id = ?)";
+    private static final String DELETE_ABSENT =
+            "DELETE FROM attendance_records WHERE student_id = ? AND attendance_date = ? AND session_id = ?";
+    private static final String COUNT_LATE =
+            "UPDATE attendance_sessions SET present_count = present_count + 1, absent_count = absent_count - 1"
+            + " WHERE id = ?";
+    // Before session ids, absent rows shared the unique (student, date) key with check-ins
+    private static final String DROP_DAY_CONSTRAINT =
+            "ALTER TABLE attendance_records DROP CONSTRAINT IF EXISTS uix_student_date";
+
+    @Autowired
+    private AttendanceSessionRepository sessionRepository;
+
+    @Autowired
+    private AttendanceRecordRepository attendanceRepository;
+
+    @Autowired
+    private SessionCheckInRepository checkInRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${attendance.sessions.early-minutes:15}")
+    private long earlyMinutes;
+
+    private final Map<Long, OpenSession> openSessions = new LinkedHashMap<>();
+
+    /**
+     * An open session: its window, roster and the students already recorded
+     */
+    private static final class OpenSession {
+        final AttendanceSession session;
+        final String[] roster;
+        final BitSet present;
+
+        OpenSession(AttendanceSession session, String[] roster) {
+            this.session = session;
+            this.roster = roster;
+            this.present = new BitSet(roster.length);
+        }
+    }
+
+    @PostConstruct
+    private void upgradeSchema() {
+        try {
+            jdbcTemplate.execute(DROP_DAY_CONSTRAINT);
+        } catch (Exception e) {
+            logger.warn("Could not drop the old attendance unique key: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreOpenSessions() {
+        refreshOpenSessions();
+        synchronized (this) {
+            if (!openSessions.isEmpty()) {
+                logger.info("Tracking {} open attendance sessions", openSessions.size());
+            }
+        }
+    }
+
+    /**
+     * Pick up sessions opened on other nodes and drop those closed elsewhere
+     */
+    @Scheduled(fixedDelayString = "${attendance.sessions.refresh-ms:5000}")
+    public void refreshOpenSessions() {
+        try {
+            List<AttendanceSession> open = sessionRepository.findByClosedAtIsNull();
+            Set<Long> ids = new HashSet<>();
+            List<AttendanceSession> added = new ArrayList<>();
+            synchronized (this) {
+                for (AttendanceSession session : open) {
+                    ids.add(session.getId());
+                    if (!openSessions.containsKey(session.getId())) {
+                        added.add(session);
+                    }
+                }
+                openSessions.keySet().retainAll(ids);
+            }
+            for (AttendanceSession session : added) {
+                OpenSession tracked = track(session);
+                synchronized (this) {
+                    openSessions.putIfAbsent(session.getId(), tracked);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error refreshing attendance sessions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close sessions whose window has ended
+     */
+    @Scheduled(fixedDelayString = "${attendance.sessions.close-check-ms:60000}")
+    public void closeEnded() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ended = new ArrayList<>();
+        synchronized (this) {
+            for (OpenSession open : openSessions.values()) {
+                if (open.session.getEndsAt().isBefore(now)) {
+                    ended.add(open.session.getId());
+                }
+            }
+        }
+        for (Long id : ended) {
+            try {
+                close(id);
+            } catch (Exception e) {
+                logger.error("Error closing attendance session {}: {}", id, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Open a session for a class section. Check-ins already recorded inside
+     * the window count as present.
+     */
+    public AttendanceSession open(String classSection, LocalDateTime startsAt, LocalDateTime endsAt) {
+        AttendanceSession session = sessionRepository.save(new AttendanceSession(classSection, startsAt, endsAt));
+        OpenSession open = track(session);
+        session.setRosterSize(open.roster.length);
+        sessionRepository.save(session);
+        synchronized (this) {
+            openSessions.put(session.getId(), open);
+        }
+        logger.info("Opened session {} for {} ({} to {}, {} students)",
+                session.getId(), classSection, startsAt, endsAt, open.roster.length);
+        return session;
+    }
+
+    /**
+     * Note a check-in in every open session of the student's section whose
+     * window contains the check-in time. The first scan of a student in a
+     * session is recorded in the database; repeats are answered from memory.
+     */
+    public void markPresent(String studentId, LocalDateTime checkInTime) {
+        List<Long> first = new ArrayList<>();
+        synchronized (this) {
+            for (OpenSession open : openSessions.values()) {
+                if (inWindow(open.session, checkInTime)) {
+                    int position = Arrays.binarySearch(open.roster, studentId);
+                    if (position >= 0 && !open.present.get(position)) {
+                        open.present.set(position);
+                        first.add(open.session.getId());
+                    }
+                }
+            }
+        }
+        for (Long id : first) {
+            try {
+                recordCheckIn(id, studentId, checkInTime);
+            } catch (Exception e) {
+                logger.error("Error recording {} in session {}: {}", studentId, id, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Clear the student's absence from closed sessions whose window contains
+     * a check-in that arrived late, e.g. in a kiosk's offline batch
+     */
+    public void markLate(String studentId, LocalDateTime checkInTime) {
+        for (AttendanceSession session : sessionRepository.findClosedContaining(
+                checkInTime, checkInTime.plusMinutes(earlyMinutes))) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> clearAbsence(session, studentId));
+        }
+    }
+
+    /**
+     * Close a session, writing absent records for the section. Returns null
+     * for an unknown session; closing twice, or on two nodes, returns the
+     * closed session and writes once.
+     */
+    public AttendanceSession close(Long id) {
+        AttendanceSession closed = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Timestamp> state = jdbcTemplate.queryForList(LOCK_SESSION, Timestamp.class, id);
+            AttendanceSession session = sessionRepository.findById(id).orElse(null);
+            if (state.isEmpty() || session == null || state.get(0) != null) {
+                return session;
+            }
+            int roster = jdbcTemplate.queryForObject(COUNT_ROSTER, Integer.class, session.getClassSection());
+            Date date = Date.valueOf(session.getStartsAt().toLocalDate());
+            int absent = jdbcTemplate.update(INSERT_ABSENT, prepend(windowArgs(session),
+                    date, Timestamp.valueOf(session.getEndsAt()), session.getId(), session.getClassSection()));
+            session.setRosterSize(roster);
+            session.setPresentCount(roster - absent);
+            session.setAbsentCount(absent);
+            session.setClosedAt(LocalDateTime.now());
+            sessionRepository.save(session);
+            logger.info("Closed session {} for {}: {} present, {} absent",
+                    id, session.getClassSection(), roster - absent, absent);
+            return session;
+        });
+        synchronized (this) {
+            openSessions.remove(id);
+        }
+        return closed;
+    }
+
+    /**
+     * Students present so far in an open session, across all nodes
+     */
+    public Integer presentCount(AttendanceSession session) {
+        return jdbcTemplate.queryForObject(COUNT_PRESENT, Integer.class,
+                prepend(windowArgs(session), session.getClassSection()));
+    }
+
+    /**
+     * Record a scan in the session, or clear the absence if another node
+     * closed the session first
+     */
+    private void recordCheckIn(Long id, String studentId, LocalDateTime checkInTime) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<Timestamp> state = jdbcTemplate.queryForList(LOCK_SESSION, Timestamp.class, id);
+            if (state.isEmpty()) {
+                return;
+            }
+            if (state.get(0) == null) {
+                jdbcTemplate.update(INSERT_CHECK_IN, id, studentId, Timestamp.valueOf(checkInTime), id, studentId);
+            } else {
+                sessionRepository.findById(id).ifPresent(session -> clearAbsence(session, studentId));
+            }
+        });
+    }
+
+    private void clearAbsence(AttendanceSession session, String studentId) {
+        if (jdbcTemplate.update(DELETE_ABSENT, studentId, Date.valueOf(session.getStartsAt().toLocalDate()),
+                session.getId()) > 0) {
+            jdbcTemplate.update(COUNT_LATE, session.getId());
+            logger.info("Absence of {} from session {} cleared by a late check-in", studentId, session.getId());
+        }
+    }
+
+    /**
+     * The session's roster, with the students already known to be present set
+     */
+    private OpenSession track(AttendanceSession session) {
+        List<String> roster = studentRepository.findStudentIdsByClassSection(session.getClassSection());
+        String[] sorted = roster.toArray(new String[0]);
+        Arrays.sort(sorted);
+        OpenSession open = new OpenSession(session, sorted);
+        LocalDate date = session.getStartsAt().toLocalDate();
+        for (Object[] checkIn : attendanceRepository.findPresentCheckInsBySection(date, session.getClassSection())) {
+            int position = Arrays.binarySearch(sorted, (String) checkIn[0]);
+            if (position >= 0 && inWindow(session, (LocalDateTime) checkIn[1])) {
+                open.present.set(position);
+            }
+        }
+        for (String studentId : checkInRepository.findStudentIdsBySessionId(session.getId())) {
+            int position = Arrays.binarySearch(sorted, studentId);
+            if (position >= 0) {
+                open.present.set(position);
+            }
+        }
+        return open;
+    }
+
+    private boolean inWindow(AttendanceSession session, LocalDateTime time) {
+        return !time.isBefore(session.getStartsAt().minusMinutes(earlyMinutes)) && !time.isAfter(session.getEndsAt());
+    }
+
+    /**
+     * Parameters of {@link #PRESENT} for a session
+     */
+    private Object[] windowArgs(AttendanceSession session) {
+        return new Object[] {
+                session.getId(),
+                Date.valueOf(session.getStartsAt().toLocalDate()),
+                Timestamp.valueOf(session.getStartsAt().minusMinutes(earlyMinutes)),
+                Timestamp.valueOf(session.getEndsAt())
+        };
+    }
+
+    private static Object[] prepend(Object[] tail, Object... head) {
+        Object[] args = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, args, head.length, tail.length);
+        return args;
+    }
+}
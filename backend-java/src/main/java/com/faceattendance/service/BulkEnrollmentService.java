@@ -0,0 +1,461 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.Student;
+import com.faceattendance.repository.StudentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Registers many students from one ZIP archive.
+ *
+ * The archive holds a {@code manifest.csv} (student_id,name,email,class_section,image)
+ * and the images it names. Entries are read straight from the request stream;
+ * each image is handed to a worker pool for decoding, descriptor extraction and
+ * storage while the next entry is being read. Images that come before the
+ * manifest cannot be matched to a row yet, so they are spooled to a temporary
+ * directory (at most {@code enrollment.bulk.max-spool-bytes}) and submitted once
+ * the manifest is in. Students are then inserted in chunked transactions and
+ * added to the gallery in one update. If the archive cannot be read to the
+ * end, face images already stored for it are deleted again.
+ */
+@Service
+public class BulkEnrollmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkEnrollmentService.class);
+    private static final String MANIFEST_NAME = "manifest.csv";
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private EnrollmentService enrollmentService;
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${enrollment.bulk.workers:0}")
+    private int workers;
+
+    @Value("${enrollment.bulk.batch-size:100}")
+    private int batchSize;
+
+    @Value("${enrollment.bulk.max-image-bytes:10485760}")
+    private int maxImageBytes;
+
+    @Value("${enrollment.bulk.max-spool-bytes:268435456}")
+    private long maxSpoolBytes;
+
+    private ExecutorService pool;
+    private Semaphore inFlight;
+
+    /**
+     * One manifest line and what happened to it
+     */
+    private static final class Row {
+        final int line;
+        final String studentId;
+        final String name;
+        final String email;
+        final String classSection;
+        final String image;
+        String error;
+        boolean imageSeen;
+        Future<Extraction> extraction;
+
+        Row(int line, String studentId, String name, String email, String classSection, String image) {
+            this.line = line;
+            this.studentId = studentId;
+            this.name = name;
+            this.email = email;
+            this.classSection = classSection;
+            this.image = image;
+        }
+    }
+
+    private static final class Extraction {
+        final String imagePath;
+        final float[] descriptor;
+
+        Extraction(String imagePath, float[] descriptor) {
+            this.imagePath = imagePath;
+            this.descriptor = descriptor;
+        }
+    }
+
+    @PostConstruct
+    private void startPool() {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-enroll-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bound buffered image bytes waiting for a worker
+        inFlight = new Semaphore(threads * 2);
+    }
+
+    @PreDestroy
+    private void stopPool() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Process an archive and return a summary with one result per manifest row
+     */
+    public Map<String, Object> enroll(InputStream archive) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Row> rows = null;
+        Map<String, List<Row>> rowsByImage = new HashMap<>();
+        Map<String, Path> earlyImages = new HashMap<>();
+        Path spoolDir = null;
+        long spooled = 0;
+        boolean read = false;
+
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = baseName(entry.getName());
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                if (MANIFEST_NAME.equalsIgnoreCase(name)) {
+                    rows = parseManifest(new String(readEntry(zip, maxImageBytes), StandardCharsets.UTF_8));
+                    validate(rows);
+                    for (Row row : rows) {
+                        if (row.error == null && row.image != null) {
+                            rowsByImage.computeIfAbsent(row.image, k -> new ArrayList<>()).add(row);
+                        }
+                    }
+                    // Images that arrived ahead of the manifest, read back one at a time
+                    for (Map.Entry<String, Path> early : earlyImages.entrySet()) {
+                        List<Row> imageRows = rowsByImage.get(early.getKey());
+                        if (imageRows != null) {
+                            submit(imageRows, early.getKey(), Files.readAllBytes(early.getValue()));
+                        }
+                        Files.delete(early.getValue());
+                    }
+                    earlyImages.clear();
+                    continue;
+                }
+
+                if (rows == null) {
+                    if (spoolDir == null) {
+                        spoolDir = Files.createTempDirectory("bulk-enroll-");
+                    }
+                    Path file = spoolDir.resolve(earlyImages.size() + ".img");
+                    long size;
+                    try (OutputStream out = Files.newOutputStream(file)) {
+                        size = copyEntry(zip, out, maxImageBytes);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(file);
+                        logger.warn("Skipping archive entry {}: {}", entry.getName(), e.getMessage());
+                        continue;
+                    }
+                    Path replaced = earlyImages.put(name, file);
+                    if (replaced != null) {
+                        Files.delete(replaced);
+                    }
+                    spooled += size;
+                    if (spooled > maxSpoolBytes) {
+                        throw new IllegalArgumentException("Images ahead of " + MANIFEST_NAME + " exceed "
+                                + maxSpoolBytes + " bytes; put " + MANIFEST_NAME + " first in the archive");
+                    }
+                    continue;
+                }
+
+                byte[] data;
+                try {
+                    data = readEntry(zip, maxImageBytes);
+                } catch (IOException e) {
+                    logger.warn("Skipping archive entry {}: {}", entry.getName(), e.getMessage());
+                    continue;
+                }
+                submit(rowsByImage.get(name), name, data);
+            }
+            if (rows == null) {
+                throw new IllegalArgumentException("Archive does not contain " + MANIFEST_NAME);
+            }
+            read = true;
+        } finally {
+            deleteSpool(spoolDir, earlyImages.values());
+            if (!read && rows != null) {
+                discardStored(rows);
+            }
+        }
+
+        List<Student> students = new ArrayList<>();
+        Map<String, float[]> descriptors = new HashMap<>();
+        for (Row row : rows) {
+            if (row.error != null) {
+                continue;
+            }
+            String imagePath = null;
+            if (row.image != null) {
+                if (!row.imageSeen) {
+                    row.error = "Image not found in archive: " + row.image;
+                    continue;
+                }
+                try {
+                    Extraction extraction = row.extraction.get();
+                    imagePath = extraction.imagePath;
+                    descriptors.put(row.studentId, extraction.descriptor);
+                } catch (ExecutionException e) {
+                    row.error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    discardStored(rows);
+                    throw new IOException("Bulk enrollment interrupted", e);
+                }
+            }
+            students.add(new Student(row.studentId, row.name, row.email, row.classSection, imagePath));
+        }
+
+        Map<String, String> failures = enrollmentService.registerBatch(students, descriptors, Math.max(1, batchSize));
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        int registered = 0;
+        for (Row row : rows) {
+            if (row.error == null && failures.containsKey(row.studentId)) {
+                row.error = "Database error: " + failures.get(row.studentId);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("row", row.line);
+            result.put("student_id", row.studentId);
+            if (row.error == null) {
+                registered++;
+                result.put("status", "registered");
+                result.put("face_enrolled", descriptors.containsKey(row.studentId));
+            } else {
+                result.put("status", "error");
+                result.put("message", row.error);
+            }
+            results.add(result);
+        }
+
+        // Clean up stored images for rows that did not make it in
+        for (Row row : rows) {
+            if (row.error != null && row.extraction != null && row.extraction.isDone()) {
+                deleteStored(row);
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("Bulk enrollment: {} of {} rows registered in {} ms", registered, rows.size(), elapsed);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("success", true);
+        summary.put("total", rows.size());
+        summary.put("registered", registered);
+        summary.put("failed", rows.size() - registered);
+        summary.put("elapsed_ms", elapsed);
+        summary.put("results", results);
+        return summary;
+    }
+
+    /**
+     * Cancel extractions that have not started and delete the images stored by
+     * the rest; those still running are cleaned up on the pool once they finish
+     */
+    private void discardStored(List<Row> rows) {
+        for (Row row : rows) {
+            if (row.extraction == null || row.extraction.cancel(false)) {
+                continue;
+            }
+            if (row.extraction.isDone()) {
+                deleteStored(row);
+            } else {
+                pool.execute(() -> deleteStored(row));
+            }
+        }
+    }
+
+    private void deleteStored(Row row) {
+        try {
+            fileStorageService.deleteFile(row.extraction.get().imagePath);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignored) {
+            // extraction itself failed, nothing was stored
+        }
+    }
+
+    private void deleteSpool(Path spoolDir, Iterable<Path> files) {
+        if (spoolDir == null) {
+            return;
+        }
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(spoolDir);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", spoolDir, e.getMessage());
+        }
+    }
+
+    private void submit(List<Row> rows, String imageName, byte[] data) throws IOException {
+        if (rows == null) {
+            logger.debug("Archive entry {} is not referenced by the manifest", imageName);
+            return;
+        }
+        for (Row row : rows) {
+            row.imageSeen = true;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Bulk enrollment interrupted", e);
+            }
+            row.extraction = pool.submit(() -> {
+                try {
+                    return extract(row, imageName, data);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private Extraction extract(Row row, String imageName, byte[] data) throws IOException {
+        float[] descriptor = faceRecognitionService.extractDescriptor(data);
+        if (descriptor == null) {
+            throw new IOException("Unsupported image format: " + imageName);
+        }
+        String imagePath = fileStorageService.saveFaceImage(data, imageName,
+                row.studentId + "_" + System.currentTimeMillis());
+        return new Extraction(imagePath, descriptor);
+    }
+
+    /**
+     * Mark rows with missing fields, duplicates within the manifest, or IDs already registered
+     */
+    private void validate(List<Row> rows) {
+        Set<String> seen = new HashSet<>();
+        List<String> ids = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.studentId.isEmpty()) {
+                row.error = "student_id cannot be empty";
+            } else if (row.name.isEmpty()) {
+                row.error = "name cannot be empty";
+            } else if (!seen.add(row.studentId)) {
+                row.error = "Duplicate student_id in manifest";
+            } else {
+                ids.add(row.studentId);
+            }
+        }
+
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += 500) {
+            existing.addAll(studentRepository.findExistingStudentIds(ids.subList(from, Math.min(ids.size(), from + 500))));
+        }
+        for (Row row : rows) {
+            if (row.error == null && existing.contains(row.studentId)) {
+                row.error = "Student ID already exists";
+            }
+        }
+    }
+
+    /**
+     * CSV format: student_id,name,email,class_section,image (header line optional)
+     */
+    private List<Row> parseManifest(String csv) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(csv))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1); // Handle quoted values
+                String studentId = column(parts, 0);
+                if (lineNumber == 1 && "student_id".equalsIgnoreCase(studentId)) {
+                    continue;
+                }
+                String email = column(parts, 2);
+                String classSection = column(parts, 3);
+                String image = column(parts, 4);
+                rows.add(new Row(lineNumber, studentId, column(parts, 1),
+                        email.isEmpty() ? null : email,
+                        classSection.isEmpty() ? null : classSection,
+                        image.isEmpty() ? null : baseName(image)));
+            }
+        }
+        return rows;
+    }
+
+    private static String column(String[] parts, int index) {
+        return index < parts.length ? parts[index].trim().replaceAll("\"", "") : "";
+    }
+
+    private static String baseName(String entryName) {
+        String name = entryName.replace("\\", "/");
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    private static byte[] readEntry(ZipInputStream zip, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copyEntry(zip, out, limit);
+        return out.toByteArray();
+    }
+
+    /**
+     * Copy the current entry, failing once it exceeds {@code limit} bytes
+     */
+    private static long copyEntry(ZipInputStream zip, OutputStream out, int limit) throws IOException {
+        byte[] buffer = new byte[8192];
+        long size = 0;
+        int read;
+        while ((read = zip.read(buffer)) != -1) {
+            if (size + read > limit) {
+                // Drain the rest of this entry so the stream stays positioned correctly
+                while (zip.read(buffer) != -1) {
+                    // discard
+                }
+                throw new IOException("Archive entry exceeds " + limit + " bytes");
+            }
+            out.write(buffer, 0, read);
+            size += read;
+        }
+        return size;
+    }
+}
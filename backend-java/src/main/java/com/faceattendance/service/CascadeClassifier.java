@@ -0,0 +1,443 @@
+package com.faceattendance.service;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boosted cascade of Haar or LBP features, read from the XML format written by
+ * OpenCV's {@code opencv_traincascade} (the format of the stock
+ * {@code haarcascade_frontalface_default.xml} and {@code lbpcascade_frontalface*.xml}).
+ *
+ * Features are scaled rather than the image, so one integral image per frame
+ * serves every window size; see {@link #atScale(double)}.
+ */
+final class CascadeClassifier {
+
+    enum FeatureType { HAAR, LBP }
+
+    private final FeatureType featureType;
+    private final int windowWidth;
+    private final int windowHeight;
+
+    // Stages: weak classifiers [stageStart, stageStart + stageCount)
+    private final float[] stageThresholds;
+    private final int[] stageStart;
+    private final int[] stageCount;
+
+    // Weak classifiers: nodes from weakNodeStart, leaves from weakLeafStart
+    private final int[] weakNodeStart;
+    private final int[] weakLeafStart;
+
+    // Tree nodes; a child <= 0 points at leaf -child of its weak classifier
+    private final int[] nodeLeft;
+    private final int[] nodeRight;
+    private final int[] nodeFeature;
+    private final float[] nodeThreshold;
+    private final int[] nodeSubsets;
+    private final int subsetSize;
+    private final float[] leaves;
+
+    // Features in window coordinates: up to three weighted rects (Haar) or one LBP cell rect
+    private final int[][] featureRects;
+    private final float[][] featureWeights;
+
+    private CascadeClassifier(FeatureType featureType, int windowWidth, int windowHeight,
+                              float[] stageThresholds, int[] stageStart, int[] stageCount,
+                              int[] weakNodeStart, int[] weakLeafStart,
+                              int[] nodeLeft, int[] nodeRight, int[] nodeFeature, float[] nodeThreshold,
+                              int[] nodeSubsets, int subsetSize, float[] leaves,
+                              int[][] featureRects, float[][] featureWeights) {
+        this.featureType = featureType;
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+        this.stageThresholds = stageThresholds;
+        this.stageStart = stageStart;
+        this.stageCount = stageCount;
+        this.weakNodeStart = weakNodeStart;
+        this.weakLeafStart = weakLeafStart;
+        this.nodeLeft = nodeLeft;
+        this.nodeRight = nodeRight;
+        this.nodeFeature = nodeFeature;
+        this.nodeThreshold = nodeThreshold;
+        this.nodeSubsets = nodeSubsets;
+        this.subsetSize = subsetSize;
+        this.leaves = leaves;
+        this.featureRects = featureRects;
+        this.featureWeights = featureWeights;
+    }
+
+    FeatureType featureType() {
+        return featureType;
+    }
+
+    int windowWidth() {
+        return windowWidth;
+    }
+
+    int windowHeight() {
+        return windowHeight;
+    }
+
+    int stageCount() {
+        return stageThresholds.length;
+    }
+
+    /**
+     * Parse a cascade file
+     *
+     * @throws IOException if the file cannot be read or is not a supported cascade
+     */
+    static CascadeClassifier load(Path path) throws IOException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            document = builder.parse(path.toFile());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Malformed cascade XML: " + e.getMessage(), e);
+        }
+
+        Element cascade = firstChild(document.getDocumentElement(), "cascade");
+        if (cascade == null) {
+            throw new IOException("Not a traincascade-format cascade (old Haar format is not supported)");
+        }
+        String stageType = text(cascade, "stageType");
+        if (!"BOOST".equals(stageType)) {
+            throw new IOException("Unsupported stage type: " + stageType);
+        }
+        FeatureType featureType;
+        try {
+            featureType = FeatureType.valueOf(text(cascade, "featureType"));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException("Unsupported feature type: " + text(cascade, "featureType"));
+        }
+        int windowWidth = Integer.parseInt(text(cascade, "width"));
+        int windowHeight = Integer.parseInt(text(cascade, "height"));
+        Element featureParams = firstChild(cascade, "featureParams");
+        int maxCatCount = featureParams != null && text(featureParams, "maxCatCount") != null
+                ? Integer.parseInt(text(featureParams, "maxCatCount")) : 0;
+        int subsetSize = maxCatCount > 0 ? (maxCatCount + 31) / 32 : 0;
+        if (featureType == FeatureType.LBP && subsetSize == 0) {
+            throw new IOException("LBP cascade without categorical splits");
+        }
+
+        List<Element> stages = items(firstChild(cascade, "stages"));
+        float[] stageThresholds = new float[stages.size()];
+        int[] stageStart = new int[stages.size()];
+        int[] stageCount = new int[stages.size()];
+        List<Integer> weakNodeStart = new ArrayList<>();
+        List<Integer> weakLeafStart = new ArrayList<>();
+        List<int[]> nodes = new ArrayList<>();
+        List<Float> thresholds = new ArrayList<>();
+        List<Float> leafValues = new ArrayList<>();
+
+        int nodeSize = featureType == FeatureType.HAAR ? 4 : 3 + subsetSize;
+        for (int s = 0; s < stages.size(); s++) {
+            Element stage = stages.get(s);
+            stageThresholds[s] = Float.parseFloat(text(stage, "stageThreshold"));
+            List<Element> weak = items(firstChild(stage, "weakClassifiers"));
+            stageStart[s] = weakNodeStart.size();
+            stageCount[s] = weak.size();
+            for (Element classifier : weak) {
+                String[] values = tokens(text(classifier, "internalNodes"));
+                if (values.length == 0 || values.length % nodeSize != 0) {
+                    throw new IOException("Malformed internalNodes in stage " + s);
+                }
+                weakNodeStart.add(nodes.size());
+                weakLeafStart.add(leafValues.size());
+                for (int n = 0; n < values.length; n += nodeSize) {
+                    int[] node = new int[3 + subsetSize];
+                    node[0] = Integer.parseInt(values[n]);
+                    node[1] = Integer.parseInt(values[n + 1]);
+                    node[2] = Integer.parseInt(values[n + 2]);
+                    if (featureType == FeatureType.HAAR) {
+                        thresholds.add(Float.parseFloat(values[n + 3]));
+                    } else {
+                        thresholds.add(0f);
+                        for (int k = 0; k < subsetSize; k++) {
+                            node[3 + k] = Integer.parseInt(values[n + 3 + k]);
+                        }
+                    }
+                    nodes.add(node);
+                }
+                for (String leaf : tokens(text(classifier, "leafValues"))) {
+                    leafValues.add(Float.parseFloat(leaf));
+                }
+            }
+        }
+
+        List<Element> features = items(firstChild(cascade, "features"));
+        int[][] featureRects = new int[features.size()][];
+        float[][] featureWeights = new float[features.size()][];
+        for (int f = 0; f < features.size(); f++) {
+            Element feature = features.get(f);
+            if (featureType == FeatureType.HAAR) {
+                if ("1".equals(text(feature, "tilted"))) {
+                    throw new IOException("Tilted Haar features are not supported");
+                }
+                List<Element> rects = items(firstChild(feature, "rects"));
+                featureRects[f] = new int[rects.size() * 4];
+                featureWeights[f] = new float[rects.size()];
+                for (int r = 0; r < rects.size(); r++) {
+                    String[] values = tokens(rects.get(r).getTextContent());
+                    for (int k = 0; k < 4; k++) {
+                        featureRects[f][r * 4 + k] = Integer.parseInt(values[k]);
+                    }
+                    featureWeights[f][r] = Float.parseFloat(values[4]);
+                }
+            } else {
+                String[] values = tokens(text(feature, "rect"));
+                featureRects[f] = new int[4];
+                for (int k = 0; k < 4; k++) {
+                    featureRects[f][k] = Integer.parseInt(values[k]);
+                }
+            }
+        }
+
+        int[] nodeLeft = new int[nodes.size()];
+        int[] nodeRight = new int[nodes.size()];
+        int[] nodeFeature = new int[nodes.size()];
+        float[] nodeThreshold = new float[nodes.size()];
+        int[] nodeSubsets = new int[nodes.size() * subsetSize];
+        for (int n = 0; n < nodes.size(); n++) {
+            int[] node = nodes.get(n);
+            nodeLeft[n] = node[0];
+            nodeRight[n] = node[1];
+            nodeFeature[n] = node[2];
+            if (node[2] < 0 || node[2] >= features.size()) {
+                throw new IOException("Node refers to missing feature " + node[2]);
+            }
+            nodeThreshold[n] = thresholds.get(n);
+            System.arraycopy(node, 3, nodeSubsets, n * subsetSize, subsetSize);
+        }
+        float[] leaves = new float[leafValues.size()];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = leafValues.get(i);
+        }
+
+        return new CascadeClassifier(featureType, windowWidth, windowHeight,
+                stageThresholds, stageStart, stageCount,
+                toArray(weakNodeStart), toArray(weakLeafStart),
+                nodeLeft, nodeRight, nodeFeature, nodeThreshold, nodeSubsets, subsetSize, leaves,
+                featureRects, featureWeights);
+    }
+
+    /**
+     * Features rescaled for a window {@code scale} times the training size
+     */
+    Scaled atScale(double scale) {
+        return new Scaled(scale);
+    }
+
+    /**
+     * The cascade with feature rectangles rounded to one window size.
+     * Immutable and safe to share between threads.
+     */
+    final class Scaled {
+        private final int width;
+        private final int height;
+        private final int[][] rects;
+        private final float[][] weights;
+        private final int extentWidth;
+        private final int extentHeight;
+        private final int normX;
+        private final int normY;
+        private final int normWidth;
+        private final int normHeight;
+
+        private Scaled(double scale) {
+            this.width = (int) Math.round(windowWidth * scale);
+            this.height = (int) Math.round(windowHeight * scale);
+            this.rects = new int[featureRects.length][];
+            this.weights = new float[featureRects.length][];
+
+            int extentX = width;
+            int extentY = height;
+            for (int f = 0; f < featureRects.length; f++) {
+                int[] source = featureRects[f];
+                int[] scaled = new int[source.length];
+                for (int k = 0; k < source.length; k += 4) {
+                    scaled[k] = (int) Math.round(source[k] * scale);
+                    scaled[k + 1] = (int) Math.round(source[k + 1] * scale);
+                    scaled[k + 2] = Math.max(1, (int) Math.round(source[k + 2] * scale));
+                    scaled[k + 3] = Math.max(1, (int) Math.round(source[k + 3] * scale));
+                    int cells = featureType == FeatureType.LBP ? 3 : 1;
+                    extentX = Math.max(extentX, scaled[k] + cells * scaled[k + 2]);
+                    extentY = Math.max(extentY, scaled[k + 1] + cells * scaled[k + 3]);
+                }
+                rects[f] = scaled;
+                if (featureType == FeatureType.HAAR) {
+                    // Re-balance the first weight so rounding does not leave the feature biased
+                    float[] w = featureWeights[f].clone();
+                    float rest = 0f;
+                    for (int r = 1; r < w.length; r++) {
+                        rest += w[r] * scaled[r * 4 + 2] * scaled[r * 4 + 3];
+                    }
+                    w[0] = -rest / (scaled[2] * scaled[3]);
+                    weights[f] = w;
+                }
+            }
+            // Rounded feature rects may reach one pixel past the nominal window
+            this.extentWidth = extentX;
+            this.extentHeight = extentY;
+
+            int border = Math.max(1, (int) Math.round(scale));
+            this.normX = border;
+            this.normY = border;
+            this.normWidth = Math.max(1, width - 2 * border);
+            this.normHeight = Math.max(1, height - 2 * border);
+        }
+
+        int width() {
+            return width;
+        }
+
+        int height() {
+            return height;
+        }
+
+        /**
+         * Width and height of the image area the window actually reads
+         */
+        int extentWidth() {
+            return extentWidth;
+        }
+
+        int extentHeight() {
+            return extentHeight;
+        }
+
+        /**
+         * Run every stage on the window at (x, y); true if it survives them all
+         */
+        boolean accepts(IntegralImage image, int x, int y) {
+            double norm = 1.0;
+            if (featureType == FeatureType.HAAR) {
+                long area = (long) normWidth * normHeight;
+                long sum = image.sum(x + normX, y + normY, normWidth, normHeight);
+                double variance = (double) area * image.squareSum(x + normX, y + normY, normWidth, normHeight)
+                        - (double) sum * sum;
+                norm = variance > 0 ? Math.sqrt(variance) : 1.0;
+            }
+
+            for (int s = 0; s < stageThresholds.length; s++) {
+                float stageSum = 0f;
+                int end = stageStart[s] + stageCount[s];
+                for (int weak = stageStart[s]; weak < end; weak++) {
+                    int base = weakNodeStart[weak];
+                    int node = base;
+                    while (true) {
+                        boolean left = featureType == FeatureType.HAAR
+                                ? haar(image, x, y, nodeFeature[node]) < nodeThreshold[node] * norm
+                                : inSubset(node, lbp(image, x, y, nodeFeature[node]));
+                        int next = left ? nodeLeft[node] : nodeRight[node];
+                        if (next <= 0) {
+                            stageSum += leaves[weakLeafStart[weak] - next];
+                            break;
+                        }
+                        node = base + next;
+                    }
+                }
+                if (stageSum < stageThresholds[s]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double haar(IntegralImage image, int x, int y, int feature) {
+            int[] r = rects[feature];
+            float[] w = weights[feature];
+            double value = 0;
+            for (int k = 0, i = 0; k < r.length; k += 4, i++) {
+                value += w[i] * image.sum(x + r[k], y + r[k + 1], r[k + 2], r[k + 3]);
+            }
+            return value;
+        }
+
+        /**
+         * 8-bit local binary pattern of the 3x3 grid of cells around the centre cell
+         */
+        private int lbp(IntegralImage image, int x, int y, int feature) {
+            int[] r = rects[feature];
+            int x0 = x + r[0];
+            int y0 = y + r[1];
+            int w = r[2];
+            int h = r[3];
+            int center = image.sum(x0 + w, y0 + h, w, h);
+            return (image.sum(x0, y0, w, h) >= center ? 128 : 0)
+                    | (image.sum(x0 + w, y0, w, h) >= center ? 64 : 0)
+                    | (image.sum(x0 + 2 * w, y0, w, h) >= center ? 32 : 0)
+                    | (image.sum(x0 + 2 * w, y0 + h, w, h) >= center ? 16 : 0)
+                    | (image.sum(x0 + 2 * w, y0 + 2 * h, w, h) >= center ? 8 : 0)
+                    | (image.sum(x0 + w, y0 + 2 * h, w, h) >= center ? 4 : 0)
+                    | (image.sum(x0, y0 + 2 * h, w, h) >= center ? 2 : 0)
+                    | (image.sum(x0, y0 + h, w, h) >= center ? 1 : 0);
+        }
+
+        private boolean inSubset(int node, int code) {
+            return (nodeSubsets[node * subsetSize + (code >> 5)] & (1 << (code & 31))) != 0;
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static String[] tokens(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    private static Element firstChild(Element parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(child.getNodeName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    private static String text(Element parent, String name) {
+        Element child = firstChild(parent, name);
+        return child != null ? child.getTextContent().trim() : null;
+    }
+
+    /**
+     * The {@code <_>} entries of an OpenCV sequence node
+     */
+    private static List<Element> items(Element sequence) throws IOException {
+        if (sequence == null) {
+            throw new IOException("Cascade is missing a required section");
+        }
+        List<Element> items = new ArrayList<>();
+        NodeList children = sequence.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element) {
+                items.add((Element) children.item(i));
+            }
+        }
+        return items;
+    }
+}
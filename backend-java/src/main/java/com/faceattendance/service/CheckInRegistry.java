@@ -0,0 +1,166 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.AttendanceRecord;
+import com.faceattendance.repository.AttendanceRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * In-memory record of which students have already checked in today
+ * (absent records written by closed sessions do not count).
+ * Lets repeat scans and kiosk retries be answered without a database round-trip.
+ * The set is a bitmap over {@link DenseStudentIndex} indices and is rebuilt from
+ * the database at startup and whenever the date rolls over.
+ */
+@Service
+public class CheckInRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckInRegistry.class);
+
+    @Autowired
+    private AttendanceRecordRepository attendanceRepository;
+
+    @Autowired
+    private DenseStudentIndex studentIndex;
+
+    private LocalDate currentDate;
+    private BitSet checkedIn = new BitSet();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedOnStartup() {
+        reseed(LocalDate.now());
+    }
+
+    /**
+     * Rebuild the set for the new day just after midnight
+     */
+    @Scheduled(cron = "${attendance.checkin.rollover-cron:1 0 0 * * *}")
+    public void rollover() {
+        reseed(LocalDate.now());
+    }
+
+    /**
+     * Check whether a student already has a record for the given date.
+     * Only today is tracked in memory; other dates always return false.
+     */
+    public boolean isCheckedIn(String studentId, LocalDate date) {
+        if (!ensureDate(date)) {
+            return false;
+        }
+        int index = studentIndex.find(studentId);
+        synchronized (this) {
+            return index >= 0 && date.equals(currentDate) && checkedIn.get(index);
+        }
+    }
+
+    /**
+     * Record a successful check-in
+     */
+    public void markCheckedIn(String studentId, LocalDate date) {
+        if (!ensureDate(date)) {
+            return;
+        }
+        int index = studentIndex.indexOf(studentId);
+        synchronized (this) {
+            if (date.equals(currentDate)) {
+                checkedIn.set(index);
+            }
+        }
+    }
+
+    /**
+     * Forget a student's check-in, e.g. after the record was deleted
+     */
+    public synchronized void clear(String studentId, LocalDate date) {
+        if (date.equals(currentDate)) {
+            int index = studentIndex.find(studentId);
+            if (index >= 0) {
+                checkedIn.clear(index);
+            }
+        }
+    }
+
+    /**
+     * Replace the set with what the database holds for today, dropping every
+     * check-in marked so far, e.g. after all data was cleared
+     */
+    public void reset() {
+        LocalDate today = LocalDate.now();
+        BitSet seeded = load(today);
+        synchronized (this) {
+            checkedIn = seeded;
+            currentDate = today;
+        }
+    }
+
+    public synchronized int checkedInCount() {
+        return checkedIn.cardinality();
+    }
+
+    /**
+     * Make sure the bitmap describes the requested date, reseeding on rollover.
+     * The first caller of a new day switches to an empty bitmap and reseeds;
+     * until the seed is swapped in, others get false and fall through to the
+     * database. Returns false for dates other than today.
+     */
+    private boolean ensureDate(LocalDate date) {
+        LocalDate today = LocalDate.now();
+        if (!date.equals(today)) {
+            return false;
+        }
+        boolean stale;
+        synchronized (this) {
+            stale = !today.equals(currentDate);
+            if (stale) {
+                currentDate = today;
+                checkedIn = new BitSet();
+            }
+        }
+        if (stale) {
+            reseed(today);
+        }
+        return true;
+    }
+
+    /**
+     * Build the day's bitmap from the database without holding the monitor,
+     * then swap it in, keeping check-ins marked while the query ran
+     */
+    private void reseed(LocalDate date) {
+        BitSet seeded = load(date);
+        synchronized (this) {
+            if (date.equals(currentDate)) {
+                seeded.or(checkedIn);
+            } else if (currentDate != null && currentDate.isAfter(date)) {
+                return;
+            }
+            checkedIn = seeded;
+            currentDate = date;
+        }
+    }
+
+    private BitSet load(LocalDate date) {
+        BitSet seeded = new BitSet(studentIndex.size());
+        try {
+            List<AttendanceRecord> records = attendanceRepository.findByAttendanceDate(date);
+            for (AttendanceRecord record : records) {
+                if (!record.isAbsent()) {
+                    seeded.set(studentIndex.indexOf(record.getStudentId()));
+                }
+            }
+            logger.info("Check-in registry seeded for {}: {} students", date, seeded.cardinality());
+        } catch (Exception e) {
+            logger.error("Error seeding check-in registry: {}", e.getMessage(), e);
+        }
+        return seeded;
+    }
+}
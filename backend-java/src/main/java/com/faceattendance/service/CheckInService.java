@@ -0,0 +1,123 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.AttendanceRecord;
+import com.faceattendance.model.Student;
+import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.StudentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Records a check-in for a recognized student, shared by the image and
+ * descriptor check-in endpoints and offline batches. Repeat check-ins for
+ * today are answered from {@link CheckInRegistry}; a lost race on the unique
+ * (student, date) check-in row is reported as already marked. Every check-in
+ * by a known student also counts towards open sessions, and an offline one
+ * clears the student's absence from a session that has closed since.
+ */
+@Service
+public class CheckInService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckInService.class);
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private AttendanceRecordRepository attendanceRepository;
+
+    @Autowired
+    private CheckInRegistry checkInRegistry;
+    
+    @Autowired
+    private AttendanceSessionService sessionService;
+
+    /**
+     * What happened to a check-in
+     */
+    public static final class Outcome {
+        public enum Status { MARKED, ALREADY_MARKED, UNKNOWN_STUDENT }
+
+        private final Status status;
+        private final AttendanceRecord record;
+        private final Student student;
+
+        private Outcome(Status status, AttendanceRecord record, Student student) {
+            this.status = status;
+            this.record = record;
+            this.student = student;
+        }
+
+        public Status getStatus() { return status; }
+        public AttendanceRecord getRecord() { return record; }
+        public Student getStudent() { return student; }
+    }
+
+    /**
+     * Save today's record for a matched student unless they already have one
+     */
+    public Outcome record(String studentId, double confidence, String photoPath, LocalDate date) {
+        return record(studentId, confidence, photoPath, date, null);
+    }
+
+    /**
+     * Save a check-in captured earlier, e.g. by a kiosk while offline, keeping
+     * its original time. Past dates are checked against the database.
+     */
+    public Outcome record(String studentId, double confidence, String photoPath, LocalDateTime checkInTime) {
+        return record(studentId, confidence, photoPath, checkInTime.toLocalDate(), checkInTime);
+    }
+
+    private Outcome record(String studentId, double confidence, String photoPath, LocalDate date, LocalDateTime checkInTime) {
+        LocalDateTime time = checkInTime != null ? checkInTime : LocalDateTime.now();
+        if (checkInRegistry.isCheckedIn(studentId, date)) {
+            markPresent(studentId, time, checkInTime != null);
+            return new Outcome(Outcome.Status.ALREADY_MARKED, null, null);
+        }
+        if (!date.equals(LocalDate.now())
+                && attendanceRepository.findByStudentIdAndAttendanceDateAndSessionId(
+                        studentId, date, AttendanceRecord.NO_SESSION).isPresent()) {
+            markPresent(studentId, time, checkInTime != null);
+            return new Outcome(Outcome.Status.ALREADY_MARKED, null, null);
+        }
+
+        Optional<Student> student = studentRepository.findByStudentId(studentId);
+        if (student.isEmpty()) {
+            return new Outcome(Outcome.Status.UNKNOWN_STUDENT, null, null);
+        }
+
+        AttendanceRecord record;
+        try {
+            AttendanceRecord checkIn = new AttendanceRecord(studentId, date, photoPath, confidence);
+            checkIn.setCheckInTime(checkInTime);
+            record = attendanceRepository.save(checkIn);
+        } catch (DataIntegrityViolationException e) {
+            if (attendanceRepository.findByStudentIdAndAttendanceDateAndSessionId(
+                    studentId, date, AttendanceRecord.NO_SESSION).isEmpty()) {
+                throw e;
+            }
+            // Another request won the race for the day's row
+            markPresent(studentId, time, checkInTime != null);
+            checkInRegistry.markCheckedIn(studentId, date);
+            return new Outcome(Outcome.Status.ALREADY_MARKED, null, student.get());
+        }
+        markPresent(studentId, record.getCheckInTime(), checkInTime != null);
+        checkInRegistry.markCheckedIn(studentId, date);
+        logger.info("Attendance marked for {} (confidence {})", studentId, String.format("%.3f", confidence));
+        return new Outcome(Outcome.Status.MARKED, record, student.get());
+    }
+
+    private void markPresent(String studentId, LocalDateTime time, boolean offline) {
+        sessionService.markPresent(studentId, time);
+        if (offline) {
+            sessionService.markLate(studentId, time);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.faceattendance.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every student ID a small, dense integer index so per-student state
+ * can be kept in bitsets and arrays instead of hash sets of strings.
+ * Indices are stable for the lifetime of the process and never reused.
+ */
+@Component
+public class DenseStudentIndex {
+
+    private final ConcurrentHashMap<String, Integer> indexById = new ConcurrentHashMap<>();
+    private final List<String> idByIndex = new ArrayList<>();
+
+    /**
+     * Get the index for a student ID, assigning the next free one if needed
+     */
+    public int indexOf(String studentId) {
+        Integer index = indexById.get(studentId);
+        if (index != null) {
+            return index;
+        }
+        synchronized (idByIndex) {
+            return indexById.computeIfAbsent(studentId, id -> {
+                idByIndex.add(id);
+                return idByIndex.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Get the index for a student ID without assigning one, or -1 if unknown
+     */
+    public int find(String studentId) {
+        Integer index = indexById.get(studentId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Resolve an index back to its student ID
+     */
+    public String studentIdAt(int index) {
+        synchronized (idByIndex) {
+            return index >= 0 && index < idByIndex.size() ? idByIndex.get(index) : null;
+        }
+    }
+
+    public int size() {
+        return indexById.size();
+    }
+}
@@ -0,0 +1,177 @@
+package com.faceattendance.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Slot allocator for fixed-length descriptors stored in chunks: plain float
+ * arrays on the heap, or direct {@link ByteBuffer}s in off-heap mode.
+ *
+ * Each descriptor occupies one slot; slots are handed out from a free list
+ * before new ones are carved off the end, so deleting and re-enrolling students
+ * does not grow the arena. With direct buffers the descriptor data lives outside
+ * the Java heap and the collector only sees the chunk objects.
+ * Not thread-safe; {@link FaceGallery} guards all access.
+ */
+final class DescriptorArena {
+
+    /** Descriptors per chunk (256 KiB of floats) */
+    private static final int CHUNK_SLOTS = 512;
+    private static final int CHUNK_SHIFT = 9;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private final boolean direct;
+    private float[][] chunks;
+    private FloatBuffer[] directChunks;
+    private int chunkCount;
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private int nextSlot;
+
+    DescriptorArena(boolean direct) {
+        this.direct = direct;
+        if (direct) {
+            directChunks = new FloatBuffer[8];
+        } else {
+            chunks = new float[8][];
+        }
+    }
+
+    /**
+     * Store a descriptor and return its slot
+     */
+    int add(float[] descriptor) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        ensureChunk(slot);
+        int base = (slot & CHUNK_MASK) * Descriptors.LENGTH;
+        if (direct) {
+            FloatBuffer chunk = directChunks[slot >>> CHUNK_SHIFT];
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                chunk.put(base + i, descriptor[i]);
+            }
+        } else {
+            System.arraycopy(descriptor, 0, chunks[slot >>> CHUNK_SHIFT], base, Descriptors.LENGTH);
+        }
+        return slot;
+    }
+
+    /**
+     * Store the next descriptor read from {@code source}, e.g. a mapped
+     * snapshot block, without an intermediate array, and return its slot
+     */
+    int add(FloatBuffer source) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        ensureChunk(slot);
+        int base = (slot & CHUNK_MASK) * Descriptors.LENGTH;
+        if (direct) {
+            FloatBuffer chunk = directChunks[slot >>> CHUNK_SHIFT];
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                chunk.put(base + i, source.get());
+            }
+        } else {
+            source.get(chunks[slot >>> CHUNK_SHIFT], base, Descriptors.LENGTH);
+        }
+        return slot;
+    }
+
+    /**
+     * Return a slot to the free list
+     */
+    void free(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    float dot(float[] probe, int slot) {
+        int base = (slot & CHUNK_MASK) * Descriptors.LENGTH;
+        return direct
+                ? Descriptors.dot(probe, directChunks[slot >>> CHUNK_SHIFT], base)
+                : Descriptors.dot(probe, chunks[slot >>> CHUNK_SHIFT], base);
+    }
+
+    /**
+     * Add the descriptor in a slot to {@code sum}
+     */
+    void accumulate(int slot, float[] sum) {
+        int base = (slot & CHUNK_MASK) * Descriptors.LENGTH;
+        if (direct) {
+            FloatBuffer chunk = directChunks[slot >>> CHUNK_SHIFT];
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                sum[i] += chunk.get(base + i);
+            }
+        } else {
+            float[] chunk = chunks[slot >>> CHUNK_SHIFT];
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                sum[i] += chunk[base + i];
+            }
+        }
+    }
+
+    float[] get(int slot) {
+        float[] descriptor = new float[Descriptors.LENGTH];
+        int base = (slot & CHUNK_MASK) * Descriptors.LENGTH;
+        if (direct) {
+            FloatBuffer chunk = directChunks[slot >>> CHUNK_SHIFT];
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                descriptor[i] = chunk.get(base + i);
+            }
+        } else {
+            System.arraycopy(chunks[slot >>> CHUNK_SHIFT], base, descriptor, 0, Descriptors.LENGTH);
+        }
+        return descriptor;
+    }
+
+    /**
+     * Slots currently holding a descriptor
+     */
+    int liveCount() {
+        return nextSlot - freeCount;
+    }
+
+    /**
+     * Bytes reserved by allocated chunks
+     */
+    long capacityBytes() {
+        return (long) chunkCount * CHUNK_SLOTS * Descriptors.LENGTH * Float.BYTES;
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    private void ensureChunk(int slot) {
+        if ((slot >>> CHUNK_SHIFT) < chunkCount) {
+            return;
+        }
+        int length = CHUNK_SLOTS * Descriptors.LENGTH;
+        if (direct) {
+            if (chunkCount == directChunks.length) {
+                directChunks = Arrays.copyOf(directChunks, chunkCount * 2);
+            }
+            directChunks[chunkCount++] = allocateFloats(length);
+        } else {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            chunks[chunkCount++] = new float[length];
+        }
+    }
+
+    /**
+     * Direct float buffer of the given length in native byte order
+     */
+    static FloatBuffer allocateFloats(int length) {
+        return ByteBuffer.allocateDirect(length * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Direct byte buffer of the given length
+     */
+    static ByteBuffer allocateBytes(int length) {
+        return ByteBuffer.allocateDirect(length);
+    }
+}
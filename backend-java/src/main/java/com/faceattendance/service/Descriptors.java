@@ -0,0 +1,160 @@
+package com.faceattendance.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Helpers for face descriptors: fixed-length, L2-normalized float vectors
+ * compared by dot product.
+ */
+public final class Descriptors {
+
+    /** Number of floats in every descriptor */
+    public static final int LENGTH = 128;
+
+    private Descriptors() {}
+
+    /**
+     * Dot product of two descriptors; equals cosine similarity for normalized input
+     */
+    public static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of a probe against a descriptor stored at an offset in a flat array
+     */
+    public static float dot(float[] probe, float[] block, int offset) {
+        float sum = 0f;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += probe[i] * block[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of a probe against a descriptor stored at an offset in a direct buffer
+     */
+    public static float dot(float[] probe, FloatBuffer block, int offset) {
+        float sum = 0f;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += probe[i] * block.get(offset + i);
+        }
+        return sum;
+    }
+
+    /**
+     * Integer dot product of an int8 probe against an int8 vector in a flat array.
+     * Products are widened to int and added in pairs before they reach the
+     * accumulator, which halves the loop-carried dependency; kept as a plain
+     * counted loop over the array so C2 can unroll and vectorize it.
+     */
+    public static int dot(byte[] probe, byte[] block, int offset) {
+        int sum = 0;
+        for (int i = 0; i < LENGTH; i += 2) {
+            sum += probe[i] * block[offset + i] + probe[i + 1] * block[offset + i + 1];
+        }
+        return sum;
+    }
+
+    /**
+     * Integer dot products of an int8 probe against {@code count} int8 vectors
+     * packed back to back in {@code block}, one per element of {@code out}.
+     * Scanning the whole block in one tight loop, apart from any ranking, is
+     * what makes the int8 pass faster than the float one.
+     */
+    public static void dot(byte[] probe, byte[] block, int count, int[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = dot(probe, block, i * LENGTH);
+        }
+    }
+
+    /**
+     * Integer dot product of an int8 probe against an int8 vector in a direct buffer
+     */
+    public static int dot(byte[] probe, ByteBuffer block, int offset) {
+        int sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            sum += probe[i] * block.get(offset + i);
+        }
+        return sum;
+    }
+
+    /**
+     * Quantize a vector to int8 into {@code out} at {@code offset}, symmetric around zero.
+     * Returns the scale that maps the int8 values back: v[i] ~= out[i] * scale.
+     */
+    public static float quantize(float[] v, byte[] out, int offset) {
+        float max = 0f;
+        for (int i = 0; i < LENGTH; i++) {
+            max = Math.max(max, Math.abs(v[i]));
+        }
+        if (max == 0f) {
+            Arrays.fill(out, offset, offset + LENGTH, (byte) 0);
+            return 0f;
+        }
+        float scale = max / 127f;
+        float inv = 1f / scale;
+        for (int i = 0; i < LENGTH; i++) {
+            out[offset + i] = (byte) Math.round(v[i] * inv);
+        }
+        return scale;
+    }
+
+    /**
+     * Quantize a vector to int8 into a buffer at {@code offset}; see {@link #quantize(float[], byte[], int)}
+     */
+    public static float quantize(float[] v, ByteBuffer out, int offset) {
+        byte[] quantized = new byte[LENGTH];
+        float scale = quantize(v, quantized, 0);
+        for (int i = 0; i < LENGTH; i++) {
+            out.put(offset + i, quantized[i]);
+        }
+        return scale;
+    }
+
+    /**
+     * Scale a vector to unit length in place
+     */
+    public static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) {
+            norm += x * x;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < v.length; i++) {
+                v[i] *= inv;
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Map a similarity in [-1, 1] to the confidence scale used by the API
+     */
+    public static double toConfidence(float similarity) {
+        return Math.max(0.0, Math.min(1.0, similarity));
+    }
+
+    public static byte[] toBytes(float[] descriptor) {
+        ByteBuffer buffer = ByteBuffer.allocate(descriptor.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(descriptor);
+        return buffer.array();
+    }
+
+    public static float[] fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != LENGTH * Float.BYTES) {
+            return null;
+        }
+        float[] descriptor = new float[LENGTH];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(descriptor);
+        return descriptor;
+    }
+}
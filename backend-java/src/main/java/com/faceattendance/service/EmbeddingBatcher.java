@@ -0,0 +1,214 @@
+package com.faceattendance.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micro-batching front end for the configured {@link FaceEmbedder}. A caller's
+ * crop is queued; a collector thread takes the first waiting crop, gathers
+ * whatever else arrives within {@code face.embedder.batch.max-wait-ms} (up to
+ * {@code max-size}) and hands the batch to one of {@code workers} threads, so
+ * an embedder with per-call overhead (model invocation, native or GPU
+ * transfer) pays it once per batch. The caller blocks until its descriptor is
+ * back. Batching is only switched on for embedders that report
+ * {@link FaceEmbedder#benefitsFromBatching()} and with a wait above 0 (the
+ * default is 0); otherwise crops are embedded on the caller's thread.
+ *
+ * Metrics: {@code face.embedder.batch.size}, {@code face.embedder.batch.wait}
+ * (time a crop spent queued) and {@code face.embedder.batch.time}.
+ */
+@Service
+public class EmbeddingBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    @Autowired
+    private Map<String, FaceEmbedder> embedders;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${face.embedder:" + GradientHistogramEmbedder.NAME + "}")
+    private String embedderName;
+
+    @Value("${face.embedder.batch.max-size:16}")
+    private int maxBatchSize;
+
+    @Value("${face.embedder.batch.max-wait-ms:0}")
+    private long maxWaitMillis;
+
+    @Value("${face.embedder.batch.workers:0}")
+    private int workers;
+
+    private FaceEmbedder embedder;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private Thread collector;
+    private ExecutorService pool;
+    private DistributionSummary batchSize;
+    private Timer batchWait;
+    private Timer batchTime;
+
+    /**
+     * A queued crop and the caller waiting for its descriptor
+     */
+    private static final class Pending {
+        final BufferedImage face;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<float[]> result = new CompletableFuture<>();
+
+        Pending(BufferedImage face) {
+            this.face = face;
+        }
+    }
+
+    @PostConstruct
+    private void init() {
+        embedder = embedders.get(embedderName);
+        if (embedder == null) {
+            throw new IllegalStateException("Unknown face.embedder '" + embedderName + "', available: " + embedders.keySet());
+        }
+        batchSize = DistributionSummary.builder("face.embedder.batch.size")
+                .description("Face crops per embedder call")
+                .register(meterRegistry);
+        batchWait = Timer.builder("face.embedder.batch.wait")
+                .description("Time a face crop waited before its batch was embedded")
+                .register(meterRegistry);
+        batchTime = Timer.builder("face.embedder.batch.time")
+                .description("Time per embedder call")
+                .register(meterRegistry);
+        if (maxWaitMillis <= 0 || maxBatchSize <= 1) {
+            logger.info("Face embedder '{}', unbatched", embedderName);
+            return;
+        }
+        if (!embedder.benefitsFromBatching()) {
+            logger.info("Face embedder '{}', unbatched: no per-call cost to spread over a batch", embedderName);
+            return;
+        }
+
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "embedder-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector = new Thread(this::collect, "embedder-batcher");
+        collector.setDaemon(true);
+        collector.start();
+        logger.info("Face embedder '{}', batches of up to {} within {} ms on {} threads",
+                embedderName, maxBatchSize, maxWaitMillis, size);
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (collector != null) {
+            collector.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Descriptor for one face crop, or null if none could be computed
+     */
+    public float[] embed(BufferedImage face) {
+        if (collector == null) {
+            Pending single = new Pending(face);
+            return run(Collections.singletonList(single)).get(0);
+        }
+        Pending pending = new Pending(face);
+        queue.add(pending);
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for face descriptor", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Face embedder failed", cause);
+        }
+    }
+
+    public int inputSize() {
+        return embedder.inputSize();
+    }
+
+    private void collect() {
+        try {
+            while (true) {
+                List<Pending> batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                pool.execute(() -> {
+                    try {
+                        List<float[]> descriptors = run(batch);
+                        for (int i = 0; i < batch.size(); i++) {
+                            batch.get(i).result.complete(descriptors.get(i));
+                        }
+                    } catch (Throwable t) {
+                        for (Pending pending : batch) {
+                            pending.result.completeExceptionally(t);
+                        }
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<float[]> run(List<Pending> batch) {
+        long start = System.nanoTime();
+        List<BufferedImage> faces = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            batchWait.record(start - pending.queuedAt, TimeUnit.NANOSECONDS);
+            faces.add(pending.face);
+        }
+        List<float[]> descriptors = embedder.embed(faces);
+        batchTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+        if (descriptors.size() != faces.size()) {
+            throw new IllegalStateException("Face embedder '" + embedderName + "' returned " + descriptors.size()
+                    + " descriptors for " + faces.size() + " faces");
+        }
+        for (float[] descriptor : descriptors) {
+            if (descriptor != null && descriptor.length != Descriptors.LENGTH) {
+                throw new IllegalStateException("Face embedder '" + embedderName + "' returned a descriptor of length "
+                        + descriptor.length + ", expected " + Descriptors.LENGTH);
+            }
+        }
+        return descriptors;
+    }
+}
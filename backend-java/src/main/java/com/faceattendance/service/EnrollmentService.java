@@ -0,0 +1,373 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.FaceTemplate;
+import com.faceattendance.model.Student;
+import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.FaceTemplateRepository;
+import com.faceattendance.repository.StudentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps persisted face templates and the in-memory {@link FaceGallery} in step.
+ */
+@Service
+public class EnrollmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnrollmentService.class);
+    private static final int RELOAD_CHUNK = 500;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FaceTemplateRepository faceTemplateRepository;
+
+    @Autowired
+    private AttendanceRecordRepository attendanceRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Autowired
+    private RecognitionExecutor recognitionExecutor;
+
+    @Autowired
+    private FaceGallery faceGallery;
+
+    @Autowired
+    private GallerySnapshotStore gallerySnapshotStore;
+
+    @Autowired
+    private RosterSyncService rosterSyncService;
+
+    @Autowired
+    private GalleryReplicator galleryReplicator;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Load the gallery at startup. When a snapshot is available its descriptors
+     * are copied straight into the gallery and only the students with change
+     * rows after the snapshot's position are reloaded from the database;
+     * otherwise every template row is loaded. Students enrolled before
+     * templates existed get one extracted from their face image and persisted.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadGallery() {
+        long start = System.currentTimeMillis();
+        // Changes after this position, including writes still committing, are replayed by the replicator
+        long changePosition = rosterSyncService.replicationStart();
+        long latest = rosterSyncService.latestVersion();
+        GallerySnapshotStore.Snapshot snapshot = gallerySnapshotStore.read();
+        if (snapshot != null && snapshot.getChangePosition() > latest) {
+            logger.warn("Ignoring gallery snapshot at change {}, ahead of the database at {}",
+                    snapshot.getChangePosition(), latest);
+            snapshot = null;
+        }
+
+        int changes = 0;
+        int backfilled;
+        if (snapshot != null) {
+            faceGallery.replaceAll(snapshot.getStudentIds(), snapshot.getSections(),
+                    snapshot.getTemplateCounts(), snapshot.getDescriptors());
+            List<String> changed = rosterSyncService.studentsChangedSince(snapshot.getChangePosition());
+            backfilled = reload(changed);
+            changes = changed.size();
+        } else {
+            backfilled = loadAll();
+        }
+        logger.info("Face gallery loaded{}: {} students, {} templates ({} changed since snapshot, {} backfilled) in {} ms",
+                snapshot != null ? " from snapshot" : "", faceGallery.size(), faceGallery.templateCount(),
+                changes, backfilled, System.currentTimeMillis() - start);
+
+        galleryReplicator.start(changePosition);
+
+        if (snapshot == null || backfilled > 0 || changes > 0) {
+            gallerySnapshotStore.write();
+        } else {
+            gallerySnapshotStore.markCurrent(faceGallery.version());
+        }
+    }
+
+    /**
+     * Build the gallery from every template row, backfilling students that
+     * have a face image but no template
+     *
+     * @return number of templates backfilled
+     */
+    private int loadAll() {
+        Map<String, List<float[]>> templatesByStudent = new HashMap<>();
+        for (FaceTemplate template : faceTemplateRepository.findAll()) {
+            addTemplate(templatesByStudent, template);
+        }
+
+        Map<String, String> sectionByStudent = new HashMap<>();
+        int backfilled = 0;
+        for (Object[] row : studentRepository.findEnrollmentSummaries()) {
+            String studentId = (String) row[0];
+            String classSection = (String) row[1];
+            String faceImagePath = (String) row[2];
+            if (classSection != null) {
+                sectionByStudent.put(studentId, classSection);
+            }
+            if (templatesByStudent.containsKey(studentId) || !faceGallery.owns(studentId)) {
+                continue;
+            }
+            float[] descriptor = backfill(studentId, faceImagePath);
+            if (descriptor != null) {
+                templatesByStudent.computeIfAbsent(studentId, id -> new ArrayList<>()).add(descriptor);
+                backfilled++;
+            }
+        }
+        faceGallery.replaceAll(templatesByStudent, sectionByStudent);
+        return backfilled;
+    }
+
+    /**
+     * Reload the given students from the database, in chunks: deleted students
+     * are dropped, the rest get their current section and templates
+     *
+     * @return number of templates backfilled
+     */
+    private int reload(List<String> studentIds) {
+        int backfilled = 0;
+        for (int from = 0; from < studentIds.size(); from += RELOAD_CHUNK) {
+            List<String> chunk = studentIds.subList(from, Math.min(studentIds.size(), from + RELOAD_CHUNK));
+            Map<String, Student> students = new HashMap<>();
+            for (Student student : studentRepository.findByStudentIdIn(chunk)) {
+                students.put(student.getStudentId(), student);
+            }
+            Map<String, List<float[]>> templatesByStudent = new HashMap<>();
+            for (FaceTemplate template : faceTemplateRepository.findByStudentIdInOrderByIdAsc(chunk)) {
+                addTemplate(templatesByStudent, template);
+            }
+            for (String studentId : chunk) {
+                Student student = students.get(studentId);
+                if (student == null) {
+                    faceGallery.remove(studentId);
+                    continue;
+                }
+                List<float[]> templates = templatesByStudent.get(studentId);
+                if (templates == null && faceGallery.owns(studentId)) {
+                    float[] descriptor = backfill(studentId, student.getFaceImagePath());
+                    if (descriptor != null) {
+                        templates = List.of(descriptor);
+                        backfilled++;
+                    }
+                }
+                faceGallery.put(studentId, student.getClassSection(), templates);
+            }
+        }
+        return backfilled;
+    }
+
+    /**
+     * Extract and persist a template from a student's registration image,
+     * or return null if they have none or no face is found
+     */
+    private float[] backfill(String studentId, String faceImagePath) {
+        if (faceImagePath == null || faceImagePath.isEmpty()) {
+            return null;
+        }
+        float[] descriptor = extract(studentId, faceImagePath);
+        if (descriptor != null) {
+            saveTemplate(studentId, descriptor, faceImagePath);
+        }
+        return descriptor;
+    }
+
+    private void addTemplate(Map<String, List<float[]>> templatesByStudent, FaceTemplate template) {
+        if (!faceGallery.owns(template.getStudentId())) {
+            return;
+        }
+        float[] descriptor = Descriptors.fromBytes(template.getDescriptor());
+        if (descriptor == null) {
+            logger.warn("Skipping malformed face template {} for {}", template.getId(), template.getStudentId());
+            return;
+        }
+        templatesByStudent.computeIfAbsent(template.getStudentId(), id -> new ArrayList<>()).add(descriptor);
+    }
+
+    /**
+     * Save a new student, and the template of their face image if one can be
+     * extracted, in one transaction together with the roster change row, then
+     * add them to the gallery
+     */
+    public Student register(Student student, String imagePath) {
+        float[] descriptor = imagePath != null ? extract(student.getStudentId(), imagePath) : null;
+        Student saved = new TransactionTemplate(transactionManager).execute(status -> {
+            Student row = studentRepository.save(student);
+            if (descriptor != null) {
+                faceTemplateRepository.save(new FaceTemplate(row.getStudentId(), Descriptors.toBytes(descriptor), imagePath));
+            }
+            rosterSyncService.recordChange(row.getStudentId());
+            return row;
+        });
+        if (descriptor != null) {
+            faceGallery.addTemplate(saved.getStudentId(), saved.getClassSection(), descriptor);
+        }
+        return saved;
+    }
+
+    /**
+     * Extract and store a new template for a student and add it to the gallery.
+     * Returns false if no descriptor could be extracted from the image.
+     */
+    public boolean enroll(String studentId, String classSection, String imagePath) {
+        float[] descriptor = extract(studentId, imagePath);
+        if (descriptor == null) {
+            return false;
+        }
+        saveTemplate(studentId, descriptor, imagePath);
+        faceGallery.addTemplate(studentId, classSection, descriptor);
+        return true;
+    }
+
+    /**
+     * Persist new students and the descriptors of their face images in chunked
+     * transactions, then add them all to the gallery in a single update.
+     * A chunk that fails is retried row by row so one bad row cannot sink its neighbours.
+     *
+     * @return error message by student ID for rows that could not be saved
+     */
+    public Map<String, String> registerBatch(List<Student> students, Map<String, float[]> descriptors, int chunkSize) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Map<String, String> failures = new HashMap<>();
+        Map<String, List<float[]>> galleryUpdate = new HashMap<>();
+        Map<String, String> sections = new HashMap<>();
+
+        for (int from = 0; from < students.size(); from += chunkSize) {
+            List<Student> chunk = students.subList(from, Math.min(students.size(), from + chunkSize));
+            try {
+                transaction.executeWithoutResult(status -> saveWithTemplates(chunk, descriptors));
+            } catch (Exception e) {
+                logger.warn("Batch of {} students failed, retrying individually: {}", chunk.size(), e.getMessage());
+                for (Student student : chunk) {
+                    student.setId(null);
+                    try {
+                        transaction.executeWithoutResult(status -> saveWithTemplates(List.of(student), descriptors));
+                    } catch (Exception rowError) {
+                        failures.put(student.getStudentId(), rowError.getMessage());
+                    }
+                }
+            }
+        }
+
+        for (Student student : students) {
+            float[] descriptor = descriptors.get(student.getStudentId());
+            if (descriptor != null && !failures.containsKey(student.getStudentId())) {
+                List<float[]> templates = new ArrayList<>();
+                templates.add(descriptor);
+                galleryUpdate.put(student.getStudentId(), templates);
+                if (student.getClassSection() != null) {
+                    sections.put(student.getStudentId(), student.getClassSection());
+                }
+            }
+        }
+        faceGallery.putAll(galleryUpdate, sections);
+        return failures;
+    }
+
+    private void saveWithTemplates(List<Student> students, Map<String, float[]> descriptors) {
+        List<FaceTemplate> templates = new ArrayList<>();
+        for (Student student : students) {
+            float[] descriptor = descriptors.get(student.getStudentId());
+            if (descriptor != null) {
+                templates.add(new FaceTemplate(student.getStudentId(), Descriptors.toBytes(descriptor), student.getFaceImagePath()));
+            }
+        }
+        List<String> studentIds = new ArrayList<>();
+        for (Student student : students) {
+            studentIds.add(student.getStudentId());
+        }
+        studentRepository.saveAll(students);
+        faceTemplateRepository.saveAll(templates);
+        rosterSyncService.recordChanges(studentIds);
+    }
+
+    /**
+     * Delete a student with their templates and attendance history in one
+     * transaction with the roster change row, drop them from the gallery and
+     * queue their photos for deletion. Rows are removed with bulk deletes, so
+     * no attendance record is loaded.
+     */
+    public void deleteStudent(Student student) {
+        String studentId = student.getStudentId();
+        Set<String> files = new HashSet<>();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            files.addAll(attendanceRepository.findPhotoPathsByStudentId(studentId));
+            files.addAll(faceTemplateRepository.findImagePathsByStudentId(studentId));
+            attendanceRepository.deleteByStudentId(studentId);
+            faceTemplateRepository.deleteByStudentId(studentId);
+            studentRepository.deleteByStudentId(studentId);
+            rosterSyncService.recordChange(studentId);
+        });
+        faceGallery.remove(studentId);
+        if (student.getFaceImagePath() != null && !student.getFaceImagePath().isEmpty()) {
+            files.add(student.getFaceImagePath());
+        }
+        fileStorageService.deleteFilesAsync(files);
+    }
+
+    /**
+     * Delete every student with their templates and attendance records,
+     * logging a roster change for each student, empty the gallery and queue
+     * all their photos for deletion
+     *
+     * @return number of students deleted
+     */
+    public int deleteAllStudents() {
+        Set<String> files = new HashSet<>();
+        List<String> studentIds = new TransactionTemplate(transactionManager).execute(status -> {
+            List<String> ids = studentRepository.findAllStudentIds();
+            files.addAll(attendanceRepository.findAllPhotoPaths());
+            files.addAll(faceTemplateRepository.findAllImagePaths());
+            files.addAll(studentRepository.findAllFaceImagePaths());
+            attendanceRepository.deleteAllRecords();
+            faceTemplateRepository.deleteAllInBatch();
+            studentRepository.deleteAllInBatch();
+            rosterSyncService.recordChanges(ids);
+            return ids;
+        });
+        faceGallery.replaceAll(new HashMap<>(), new HashMap<>());
+        fileStorageService.deleteFilesAsync(files);
+        return studentIds.size();
+    }
+
+    public long templateCount(String studentId) {
+        return faceTemplateRepository.countByStudentId(studentId);
+    }
+
+    private float[] extract(String studentId, String imagePath) {
+        float[] descriptor = recognitionExecutor.run(() -> faceRecognitionService.extractDescriptor(imagePath));
+        if (descriptor == null) {
+            logger.warn("Could not extract face descriptor for {} from {}", studentId, imagePath);
+        }
+        return descriptor;
+    }
+
+    private void saveTemplate(String studentId, float[] descriptor, String imagePath) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            faceTemplateRepository.save(new FaceTemplate(studentId, Descriptors.toBytes(descriptor), imagePath));
+            rosterSyncService.recordChange(studentId);
+        });
+    }
+}
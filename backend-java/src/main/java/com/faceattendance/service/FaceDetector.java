@@ -0,0 +1,365 @@
+package com.faceattendance.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU-only Viola-Jones face detector driven by an OpenCV cascade file.
+ *
+ * A frame is first searched at reduced resolution: one integral image is built
+ * for it and every window scale is scanned in parallel. Each surviving cluster
+ * is then re-scanned at higher resolution in a small region around it, over a
+ * narrow band of scales, to tighten the box.
+ */
+@Component
+public class FaceDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceDetector.class);
+    private static final double GROUP_EPS = 0.2;
+    private static final double REFINE_MARGIN = 0.3;
+    private static final double REFINE_SCALE_BAND = 1.25;
+    private static final double REFINE_SCALE_STEP = 1.05;
+
+    @Value("${face.detection.cascade-dir:src/main/resources/cascade}")
+    private String cascadeDir;
+
+    @Value("${face.detection.max-side:320}")
+    private int detectMaxSide;
+
+    @Value("${face.detection.refine-face-size:120}")
+    private int refineFaceSize;
+
+    @Value("${face.detection.min-face-size:40}")
+    private int minFaceSize;
+
+    @Value("${face.detection.scale-factor:1.1}")
+    private double scaleFactor;
+
+    @Value("${face.detection.min-neighbors:3}")
+    private int minNeighbors;
+
+    @Value("${face.detection.threads:0}")
+    private int threads;
+
+    private CascadeClassifier cascade;
+    private ExecutorService pool;
+
+    @PostConstruct
+    private void init() {
+        cascade = loadCascade(Paths.get(cascadeDir));
+        if (cascade == null) {
+            logger.warn("No face cascade found in {} - faces will not be detected or cropped", cascadeDir);
+            return;
+        }
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "face-detect-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void stopPool() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public boolean isLoaded() {
+        return cascade != null;
+    }
+
+    /**
+     * Detect faces; boxes are in the image's coordinates, strongest cluster first.
+     * Returns an empty list when no cascade is loaded.
+     */
+    public List<Rectangle> detect(BufferedImage image) {
+        List<Rectangle> faces = new ArrayList<>();
+        if (cascade == null) {
+            return faces;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double coarse = Math.min(1.0, detectMaxSide / (double) Math.max(width, height));
+        int coarseWidth = Math.max(1, (int) Math.round(width * coarse));
+        int coarseHeight = Math.max(1, (int) Math.round(height * coarse));
+
+        IntegralImage integral = integral(image, new Rectangle(0, 0, width, height), coarseWidth, coarseHeight);
+        double minScale = Math.max(1.0, minFaceSize * coarse / cascade.windowWidth());
+        List<Cluster> clusters = group(scanScales(integral, minScale, Double.MAX_VALUE, true), minNeighbors);
+
+        for (Cluster cluster : clusters) {
+            Rectangle box = scale(cluster.box, 1.0 / coarse);
+            Rectangle refined = refine(image, box);
+            faces.add(refined != null ? refined : box);
+        }
+        return faces;
+    }
+
+    /**
+     * Largest detected face, or null when none is found or no cascade is loaded
+     */
+    public Rectangle detectLargest(BufferedImage image) {
+        Rectangle largest = null;
+        for (Rectangle face : detect(image)) {
+            if (largest == null || face.width * face.height > largest.width * largest.height) {
+                largest = face;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Re-detect around a coarse box, at a resolution where the face is about
+     * {@code refineFaceSize} pixels wide, only over scales near the coarse size
+     */
+    private Rectangle refine(BufferedImage image, Rectangle box) {
+        int margin = (int) Math.round(Math.max(box.width, box.height) * REFINE_MARGIN);
+        Rectangle region = new Rectangle(box.x - margin, box.y - margin, box.width + 2 * margin, box.height + 2 * margin)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (region.isEmpty()) {
+            return null;
+        }
+        double factor = Math.min(1.0, refineFaceSize / (double) box.width);
+        int regionWidth = Math.max(1, (int) Math.round(region.width * factor));
+        int regionHeight = Math.max(1, (int) Math.round(region.height * factor));
+        IntegralImage integral = integral(image, region, regionWidth, regionHeight);
+
+        double expected = box.width * factor / cascade.windowWidth();
+        List<Rectangle> hits = scanScales(integral, Math.max(1.0, expected / REFINE_SCALE_BAND),
+                expected * REFINE_SCALE_BAND, false);
+        List<Cluster> clusters = group(hits, 1);
+        if (clusters.isEmpty()) {
+            return null;
+        }
+        Rectangle best = scale(clusters.get(0).box, 1.0 / factor);
+        best.translate(region.x, region.y);
+        return best;
+    }
+
+    /**
+     * Slide the cascade over every position at each scale in [minScale, maxScale].
+     * Scales are scanned in parallel on the detection pool when {@code parallel} is set.
+     */
+    private List<Rectangle> scanScales(IntegralImage integral, double minScale, double maxScale, boolean parallel) {
+        List<Callable<List<Rectangle>>> tasks = new ArrayList<>();
+        double step = parallel ? scaleFactor : REFINE_SCALE_STEP;
+        for (double scale = minScale; scale <= maxScale; scale *= step) {
+            CascadeClassifier.Scaled scaled = cascade.atScale(scale);
+            if (scaled.extentWidth() > integral.width() || scaled.extentHeight() > integral.height()) {
+                break;
+            }
+            tasks.add(() -> scan(integral, scaled));
+        }
+
+        List<Rectangle> hits = new ArrayList<>();
+        try {
+            if (parallel && tasks.size() > 1) {
+                for (Future<List<Rectangle>> future : pool.invokeAll(tasks)) {
+                    hits.addAll(future.get());
+                }
+            } else {
+                for (Callable<List<Rectangle>> task : tasks) {
+                    hits.addAll(task.call());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Face detection failed: {}", e.getCause().getMessage(), e.getCause());
+        } catch (Exception e) {
+            logger.error("Face detection failed: {}", e.getMessage(), e);
+        }
+        return hits;
+    }
+
+    private static List<Rectangle> scan(IntegralImage integral, CascadeClassifier.Scaled scaled) {
+        List<Rectangle> hits = new ArrayList<>();
+        // The cascade tolerates offsets of several percent of the window
+        int stride = Math.max(2, scaled.width() / 12);
+        int maxX = integral.width() - scaled.extentWidth();
+        int maxY = integral.height() - scaled.extentHeight();
+        for (int y = 0; y <= maxY; y += stride) {
+            for (int x = 0; x <= maxX; x += stride) {
+                if (scaled.accepts(integral, x, y)) {
+                    hits.add(new Rectangle(x, y, scaled.width(), scaled.height()));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Merge overlapping hits into clusters (as OpenCV's groupRectangles does),
+     * keep those with more than {@code minNeighbors} members, and drop clusters
+     * that sit inside a stronger one. Strongest first.
+     */
+    private static List<Cluster> group(List<Rectangle> hits, int minNeighbors) {
+        int[] parent = new int[hits.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < hits.size(); i++) {
+            for (int j = i + 1; j < hits.size(); j++) {
+                if (similar(hits.get(i), hits.get(j))) {
+                    parent[root(parent, i)] = root(parent, j);
+                }
+            }
+        }
+
+        List<Cluster> clusters = new ArrayList<>();
+        Cluster[] byRoot = new Cluster[hits.size()];
+        for (int i = 0; i < hits.size(); i++) {
+            int r = root(parent, i);
+            if (byRoot[r] == null) {
+                byRoot[r] = new Cluster();
+                clusters.add(byRoot[r]);
+            }
+            byRoot[r].add(hits.get(i));
+        }
+
+        List<Cluster> kept = new ArrayList<>();
+        for (Cluster cluster : clusters) {
+            if (cluster.count > minNeighbors) {
+                cluster.finish();
+                kept.add(cluster);
+            }
+        }
+        List<Cluster> result = new ArrayList<>();
+        for (Cluster inner : kept) {
+            boolean nested = false;
+            for (Cluster outer : kept) {
+                if (outer != inner && (outer.count > Math.max(3, inner.count) || inner.count < 3)
+                        && contains(outer.box, inner.box)) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                result.add(inner);
+            }
+        }
+        result.sort(Comparator.comparingInt((Cluster c) -> c.count).reversed());
+        return result;
+    }
+
+    private static boolean similar(Rectangle a, Rectangle b) {
+        double delta = GROUP_EPS * (Math.min(a.width, b.width) + Math.min(a.height, b.height)) * 0.5;
+        return Math.abs(a.x - b.x) <= delta && Math.abs(a.y - b.y) <= delta
+                && Math.abs(a.x + a.width - b.x - b.width) <= delta
+                && Math.abs(a.y + a.height - b.y - b.height) <= delta;
+    }
+
+    private static boolean contains(Rectangle outer, Rectangle inner) {
+        int dx = (int) Math.round(outer.width * GROUP_EPS);
+        int dy = (int) Math.round(outer.height * GROUP_EPS);
+        return inner.x >= outer.x - dx && inner.y >= outer.y - dy
+                && inner.x + inner.width <= outer.x + outer.width + dx
+                && inner.y + inner.height <= outer.y + outer.height + dy;
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static Rectangle scale(Rectangle r, double factor) {
+        return new Rectangle((int) Math.round(r.x * factor), (int) Math.round(r.y * factor),
+                (int) Math.round(r.width * factor), (int) Math.round(r.height * factor));
+    }
+
+    /**
+     * Grayscale integral image of one region of the frame, resampled to the given size
+     */
+    private IntegralImage integral(BufferedImage image, Rectangle region, int width, int height) {
+        BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height,
+                region.x, region.y, region.x + region.width, region.y + region.height, null);
+        g.dispose();
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        return new IntegralImage(pixels, width, height, cascade.featureType() == CascadeClassifier.FeatureType.HAAR);
+    }
+
+    /**
+     * First cascade XML in the directory (by name) that parses
+     */
+    private static CascadeClassifier loadCascade(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.xml")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            logger.error("Error listing cascade directory {}: {}", dir, e.getMessage());
+            return null;
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path file : files) {
+            try {
+                CascadeClassifier loaded = CascadeClassifier.load(file);
+                logger.info("Loaded {} face cascade {} ({}x{} window, {} stages)", loaded.featureType(),
+                        file.getFileName(), loaded.windowWidth(), loaded.windowHeight(), loaded.stageCount());
+                return loaded;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping cascade {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Group of similar hits and their averaged box
+     */
+    private static final class Cluster {
+        private int count;
+        private long x;
+        private long y;
+        private long width;
+        private long height;
+        private Rectangle box;
+
+        void add(Rectangle r) {
+            count++;
+            x += r.x;
+            y += r.y;
+            width += r.width;
+            height += r.height;
+        }
+
+        void finish() {
+            box = new Rectangle((int) (x / count), (int) (y / count), (int) (width / count), (int) (height / count));
+        }
+    }
+}
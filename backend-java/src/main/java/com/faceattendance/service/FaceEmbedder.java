@@ -0,0 +1,36 @@
+package com.faceattendance.service;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Turns face crops into descriptors. Implementations are Spring beans; the
+ * one named by {@code face.embedder} is used, always through
+ * {@link EmbeddingBatcher}, which hands it the crops of concurrent requests
+ * together when it reports a batch speedup. Descriptors must be {@link Descriptors#LENGTH} long and
+ * L2-normalized, since the gallery compares them by dot product. Switching
+ * embedder makes existing templates meaningless, so re-enroll afterwards.
+ */
+public interface FaceEmbedder {
+
+    /**
+     * Descriptors for a batch of face crops, in the same order; an entry is
+     * null when no descriptor could be computed for that crop
+     */
+    List<float[]> embed(List<BufferedImage> faces);
+
+    /**
+     * Side in pixels of the square input the embedder works on; faces are
+     * decoded at about twice this so it can downscale
+     */
+    int inputSize();
+
+    /**
+     * Whether embedding several crops in one call is cheaper than one at a
+     * time (model invocation, native or GPU transfer); only then does
+     * {@link EmbeddingBatcher} hold crops back to form batches
+     */
+    default boolean benefitsFromBatching() {
+        return false;
+    }
+}
@@ -0,0 +1,401 @@
+package com.faceattendance.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory gallery of enrolled face descriptors, partitioned by class section.
+ *
+ * Each student holds one or more templates plus their normalized centroid.
+ * Centroids are packed into one flat array per partition so the first matching
+ * pass is a linear scan; only the top-K students from that pass are re-ranked
+ * against all of their templates. Matching can be scoped to a single section,
+ * which keeps the candidate set small for a kiosk that knows its room.
+ *
+ * With {@code face.gallery.quantized} the centroid pass runs on int8 vectors
+ * (a quarter of the memory traffic); the re-ranking pass stays full precision.
+ *
+ * With {@code face.gallery.off-heap} templates and centroids are kept in direct
+ * buffers, so a large gallery does not add to the old generation the collector
+ * has to walk; the heap then holds little more than the student ID to slot maps.
+ *
+ * When matching is sharded across nodes ({@link ShardAssignment}) students
+ * owned by other shards are ignored on every write path.
+ */
+@Component
+public class FaceGallery {
+
+    /** Partition for students without a class section */
+    static final String UNASSIGNED = "";
+
+    private final int prefilterTopK;
+    private final boolean quantized;
+    private final boolean offHeap;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, GalleryPartition> partitions = new HashMap<>();
+    private final Map<String, String> sectionById = new HashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private DescriptorArena arena;
+
+    @Autowired(required = false)
+    private ShardAssignment shardAssignment;
+
+    /**
+     * Best match found for a probe descriptor
+     */
+    public static final class Match {
+        private final String studentId;
+        private final float similarity;
+
+        public Match(String studentId, float similarity) {
+            this.studentId = studentId;
+            this.similarity = similarity;
+        }
+
+        public String getStudentId() { return studentId; }
+        public float getSimilarity() { return similarity; }
+    }
+
+    @Autowired
+    public FaceGallery(@Value("${face.gallery.prefilter-top-k:8}") int prefilterTopK,
+                       @Value("${face.gallery.quantized:false}") boolean quantized,
+                       @Value("${face.gallery.off-heap:false}") boolean offHeap) {
+        this.prefilterTopK = Math.max(1, prefilterTopK);
+        this.quantized = quantized;
+        this.offHeap = offHeap;
+        this.arena = new DescriptorArena(offHeap);
+    }
+
+    /**
+     * Callback for walking the gallery contents
+     */
+    public interface Visitor {
+        void visit(String studentId, String classSection, List<float[]> templates);
+    }
+
+    /**
+     * Replace a student's templates, adding the student or moving them to a new section if needed
+     */
+    public void put(String studentId, String classSection, List<float[]> templates) {
+        if (!owns(studentId)) {
+            return;
+        }
+        if (templates == null || templates.isEmpty()) {
+            remove(studentId);
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            partitionFor(studentId, classSection).put(studentId, templates);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add one more template to a student, adding the student if needed
+     */
+    public void addTemplate(String studentId, String classSection, float[] descriptor) {
+        if (!owns(studentId)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            partitionFor(studentId, classSection).addTemplate(studentId, descriptor);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(String studentId) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            int[] removed = detach(studentId);
+            if (removed == null) {
+                return false;
+            }
+            for (int handle : removed) {
+                arena.free(handle);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace many students under a single write lock
+     */
+    public void putAll(Map<String, List<float[]>> templatesByStudent, Map<String, String> sectionByStudent) {
+        if (templatesByStudent.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            for (Map.Entry<String, List<float[]>> entry : templatesByStudent.entrySet()) {
+                if (!entry.getValue().isEmpty() && owns(entry.getKey())) {
+                    partitionFor(entry.getKey(), sectionByStudent.get(entry.getKey()))
+                            .put(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop everything and load the given templates in one pass
+     */
+    public void replaceAll(Map<String, List<float[]>> templatesByStudent, Map<String, String> sectionByStudent) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            partitions.clear();
+            sectionById.clear();
+            // Start a fresh arena so the old buffers can be released
+            arena = new DescriptorArena(offHeap);
+            for (Map.Entry<String, List<float[]>> entry : templatesByStudent.entrySet()) {
+                if (!entry.getValue().isEmpty() && owns(entry.getKey())) {
+                    partitionFor(entry.getKey(), sectionByStudent.get(entry.getKey()))
+                            .put(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search the whole gallery
+     */
+    public Match match(float[] probe) {
+        lock.readLock().lock();
+        try {
+            GalleryPartition.Candidates candidates = new GalleryPartition.Candidates(prefilterTopK);
+            byte[] quantizedProbe = quantize(probe);
+            for (GalleryPartition partition : partitions.values()) {
+                partition.scanCentroids(probe, quantizedProbe, candidates);
+            }
+            return candidates.best(probe);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} best matches, best first, searching one section or
+     * the whole gallery when {@code classSection} is null
+     */
+    public List<Match> matchTopK(float[] probe, String classSection, int limit) {
+        lock.readLock().lock();
+        try {
+            GalleryPartition.Candidates candidates = new GalleryPartition.Candidates(Math.max(prefilterTopK, limit));
+            byte[] quantizedProbe = quantize(probe);
+            if (classSection != null) {
+                GalleryPartition partition = partitions.get(normalizeSection(classSection));
+                if (partition != null) {
+                    partition.scanCentroids(probe, quantizedProbe, candidates);
+                }
+            } else {
+                for (GalleryPartition partition : partitions.values()) {
+                    partition.scanCentroids(probe, quantizedProbe, candidates);
+                }
+            }
+            return candidates.ranked(probe, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search only one class section; returns null if the section is unknown or empty
+     */
+    public Match match(float[] probe, String classSection) {
+        lock.readLock().lock();
+        try {
+            GalleryPartition partition = partitions.get(normalizeSection(classSection));
+            if (partition == null) {
+                return null;
+            }
+            GalleryPartition.Candidates candidates = new GalleryPartition.Candidates(prefilterTopK);
+            partition.scanCentroids(probe, quantize(probe), candidates);
+            return candidates.best(probe);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drop everything and load packed descriptors, e.g. a mapped snapshot
+     * block: {@code templateCounts[i]} descriptors for {@code studentIds[i]}
+     * in order. Descriptors are copied from the buffer straight into storage.
+     */
+    public void replaceAll(String[] studentIds, String[] sections, int[] templateCounts, FloatBuffer descriptors) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            partitions.clear();
+            sectionById.clear();
+            arena = new DescriptorArena(offHeap);
+            for (int i = 0; i < studentIds.length; i++) {
+                int count = templateCounts[i];
+                if (count == 0 || !owns(studentIds[i])) {
+                    descriptors.position(descriptors.position() + count * Descriptors.LENGTH);
+                    continue;
+                }
+                int[] handles = new int[count];
+                for (int t = 0; t < count; t++) {
+                    handles[t] = arena.add(descriptors);
+                }
+                partitionFor(studentIds[i], sections[i]).putHandles(studentIds[i], handles);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Walk every student under the read lock; visitors receive copies of the template lists
+     */
+    public void forEach(Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, GalleryPartition> entry : partitions.entrySet()) {
+                String section = UNASSIGNED.equals(entry.getKey()) ? null : entry.getKey();
+                entry.getValue().forEach(section, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counter bumped on every change, so derived caches can tell when they are stale
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Whether this node keeps the student, always true unless matching is sharded
+     */
+    public boolean owns(String studentId) {
+        return shardAssignment == null || shardAssignment.owns(studentId);
+    }
+
+    public boolean contains(String studentId) {
+        lock.readLock().lock();
+        try {
+            return sectionById.containsKey(studentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return sectionById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int sectionSize(String classSection) {
+        lock.readLock().lock();
+        try {
+            GalleryPartition partition = partitions.get(normalizeSection(classSection));
+            return partition != null ? partition.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int templateCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (GalleryPartition partition : partitions.values()) {
+                count += partition.templateCount();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes reserved for template descriptors, on or off the heap
+     */
+    public long templateStorageBytes() {
+        lock.readLock().lock();
+        try {
+            return arena.capacityBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Partition a student belongs in, moving their templates if the section changed
+     */
+    private GalleryPartition partitionFor(String studentId, String classSection) {
+        String section = normalizeSection(classSection);
+        String current = sectionById.get(studentId);
+        GalleryPartition partition = partitions.computeIfAbsent(section, s -> new GalleryPartition(arena, quantized));
+        if (current != null && !current.equals(section)) {
+            int[] moved = detach(studentId);
+            partition = partitions.computeIfAbsent(section, s -> new GalleryPartition(arena, quantized));
+            partition.putHandles(studentId, moved);
+        }
+        sectionById.put(studentId, section);
+        return partition;
+    }
+
+    private int[] detach(String studentId) {
+        String section = sectionById.remove(studentId);
+        if (section == null) {
+            return null;
+        }
+        GalleryPartition partition = partitions.get(section);
+        int[] removed = partition.remove(studentId);
+        if (partition.size() == 0) {
+            partitions.remove(section);
+        }
+        return removed;
+    }
+
+    private byte[] quantize(float[] probe) {
+        if (!quantized) {
+            return null;
+        }
+        byte[] quantizedProbe = new byte[Descriptors.LENGTH];
+        Descriptors.quantize(probe, quantizedProbe, 0);
+        return quantizedProbe;
+    }
+
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    static String normalizeSection(String classSection) {
+        return classSection != null ? classSection.trim() : UNASSIGNED;
+    }
+}
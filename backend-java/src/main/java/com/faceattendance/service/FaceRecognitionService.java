@@ -2,9 +2,15 @@ package com.faceattendance.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -13,65 +19,260 @@ import java.util.*;
 public class FaceRecognitionService {
     
     private static final Logger logger = LoggerFactory.getLogger(FaceRecognitionService.class);
-    private static final double MIN_RECOGNITION_CONFIDENCE = 0.5;
-    private boolean isEnabled = false;
+    private static final double FACE_CROP_MARGIN = 0.1;
+    private static final int FACE_IMAGE_SIDE = 256;
     
-    public FaceRecognitionService() {
+    @Autowired
+    private FaceGallery faceGallery;
+    
+    @Autowired
+    private RecognitionCache recognitionCache;
+    
+    @Autowired
+    private FaceDetector faceDetector;
+    
+    @Autowired
+    private ImageDecoder imageDecoder;
+    
+    @Autowired
+    private EmbeddingBatcher embeddingBatcher;
+    
+    @Autowired
+    private ShardAssignment shardAssignment;
+    
+    @Autowired
+    private ShardClient shardClient;
+    
+    @Value("${face.detection.max-side:320}")
+    private int detectMaxSide;
+    
+    /** Lowest descriptor similarity accepted as a match; tune with RecognitionEvaluation */
+    @Value("${face.recognition.min-confidence:0.5}")
+    private double minConfidence;
+    
+    /**
+     * Extract the largest face from an image as JPEG bytes.
+     * Returns the file unchanged if no cascade is loaded or no face is found.
+     */
+    public byte[] extractFace(String imagePath) {
         try {
-            // Check if cascade files are available
-            File cascadeDir = new File("src/main/resources/cascade");
-            if (cascadeDir.exists()) {
-                isEnabled = true;
-                logger.info("Face recognition cascade files found");
-            } else {
-                logger.warn("Face recognition cascade files not found - will use basic detection");
-                isEnabled = false;
+            byte[] original = Files.readAllBytes(Paths.get(imagePath));
+            if (!faceDetector.isLoaded()) {
+                logger.warn("Face extraction not available - cascade not loaded");
+                return original;
+            }
+            ImageDecoder.Decoded coarse = imageDecoder.decode(original, detectMaxSide);
+            ImageDecoder.Decoded face = coarse != null ? decodeFace(original, coarse, FACE_IMAGE_SIDE) : null;
+            if (face == null) {
+                return original;
             }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(face.getImage(), "jpg", out);
+            return out.toByteArray();
         } catch (Exception e) {
-            logger.error("Error initializing face recognizer: {}", e.getMessage());
-            isEnabled = false;
+            logger.error("Error extracting face from {}: {}", imagePath, e.getMessage());
+            return null;
         }
     }
     
     /**
-     * Extract face from image (stub - OpenCV would be needed for real implementation)
+     * Find the face on the subsampled frame. If it is at least half of
+     * {@code maxSide} wide there it is cropped from that frame; otherwise only the
+     * face region of the source is decoded again, at up to {@code maxSide} pixels.
+     * Returns null if no cascade is loaded or no face is found.
      */
-    public byte[] extractFace(String imagePath) {
+    private ImageDecoder.Decoded decodeFace(byte[] data, ImageDecoder.Decoded coarse, int maxSide) throws IOException {
+        if (!faceDetector.isLoaded()) {
+            return null;
+        }
+        Rectangle face = largestFace(coarse.getImage());
+        if (face == null) {
+            return null;
+        }
+        if (face.width * 2 >= maxSide) {
+            return new ImageDecoder.Decoded(coarse.getImage().getSubimage(face.x, face.y, face.width, face.height),
+                    coarse.getSourceWidth(), coarse.getSourceHeight(), coarse.toSource(face));
+        }
+        return imageDecoder.decodeRegion(data, coarse.toSource(face), maxSide);
+    }
+    
+    /**
+     * Crop an image to its largest detected face, with a small margin.
+     * Returns the image itself if no cascade is loaded or no face is found.
+     */
+    public BufferedImage cropFace(BufferedImage image) {
+        return cropFace(image, faceDetector.detectLargest(image));
+    }
+    
+    /**
+     * Crop an image to a face box found earlier, with a small margin.
+     * Returns the image itself when the box is null.
+     */
+    private BufferedImage cropFace(BufferedImage image, Rectangle face) {
+        Rectangle crop = withMargin(face, image);
+        return crop != null ? image.getSubimage(crop.x, crop.y, crop.width, crop.height) : image;
+    }
+    
+    /**
+     * Largest detected face grown by the crop margin and clipped to the image, or null
+     */
+    private Rectangle largestFace(BufferedImage image) {
+        return withMargin(faceDetector.detectLargest(image), image);
+    }
+    
+    private static Rectangle withMargin(Rectangle face, BufferedImage image) {
+        if (face == null) {
+            return null;
+        }
+        Rectangle grown = new Rectangle(face);
+        int margin = (int) Math.round(grown.width * FACE_CROP_MARGIN);
+        grown.grow(margin, margin);
+        Rectangle clipped = grown.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        return clipped.isEmpty() ? null : clipped;
+    }
+    
+    /**
+     * Compute a face descriptor for an image with the configured {@link FaceEmbedder}
+     */
+    public float[] extractDescriptor(String imagePath) {
         try {
-            if (!isEnabled) {
-                logger.warn("Face extraction not available - cascade not loaded");
-                // Return file as-is for now
-                return Files.readAllBytes(Paths.get(imagePath));
+            float[] descriptor = extractDescriptor(Files.readAllBytes(Paths.get(imagePath)));
+            if (descriptor == null) {
+                logger.warn("Unsupported image format: {}", imagePath);
             }
-            return Files.readAllBytes(Paths.get(imagePath));
+            return descriptor;
         } catch (Exception e) {
-            logger.error("Error extracting face from {}: {}", imagePath, e.getMessage());
+            logger.error("Error extracting descriptor from {}: {}", imagePath, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Compute a face descriptor from encoded image bytes. Only a subsampled frame,
+     * and for small faces the face region, are ever decoded. Returns null for
+     * unsupported formats.
+     */
+    public float[] extractDescriptor(byte[] data) throws IOException {
+        ImageDecoder.Decoded coarse = imageDecoder.decode(data, detectMaxSide);
+        if (coarse == null) {
+            return null;
+        }
+        ImageDecoder.Decoded face = decodeFace(data, coarse, embeddingBatcher.inputSize() * 2);
+        return embeddingBatcher.embed(face != null ? face.getImage() : coarse.getImage());
+    }
+    
+    /**
+     * Compute a face descriptor for an already decoded image, over the detected
+     * face when a cascade is loaded
+     */
+    public float[] extractDescriptor(BufferedImage image) {
+        return embeddingBatcher.embed(cropFace(image));
+    }
+    
+    /**
+     * Find best match for a probe descriptor in the enrolled gallery
+     */
+    public Map<String, Object> findBestMatch(float[] probe) {
+        return findBestMatch(probe, null);
+    }
+    
+    /**
+     * Find best match for a probe descriptor, searching the given class section first.
+     * Falls back to the whole gallery only if nothing in the section clears the threshold.
+     * When matching is sharded every shard is searched; a match found without
+     * all shards answering carries "partial": true.
+     */
+    public Map<String, Object> findBestMatch(float[] probe, String classSection) {
+        try {
+            if (classSection != null && !classSection.trim().isEmpty()) {
+                Map<String, Object> scoped = search(probe, classSection, "section");
+                if (scoped != null) {
+                    return scoped;
+                }
+                logger.debug("No match in section '{}', falling back to global search", classSection);
+            }
+            return search(probe, null, "global");
+        } catch (Exception e) {
+            logger.error("Error finding best match: {}", e.getMessage());
             return null;
         }
     }
     
     /**
-     * Compare two faces (stub - returns simulated confidence)
+     * Find best match for a decoded probe image. Near-duplicate frames seen within
+     * the cache TTL reuse the earlier result without extracting or scanning again.
+     */
+    public Map<String, Object> findBestMatch(BufferedImage image, String classSection) {
+        return findBestMatch(image, null, classSection);
+    }
+    
+    /**
+     * Find best match for a decoded probe image whose face box was already
+     * detected, e.g. by {@link ImageQualityGate}; with a null box the face is
+     * detected here
+     */
+    public Map<String, Object> findBestMatch(BufferedImage image, Rectangle face, String classSection) {
+        long hash = PerceptualHash.dHash(image);
+        long galleryVersion = faceGallery.version();
+        RecognitionCache.Hit hit = recognitionCache.lookup(hash, classSection, galleryVersion);
+        if (hit != null) {
+            logger.debug("Recognition cache hit for frame {}", Long.toHexString(hash));
+            return hit.getResult();
+        }
+        
+        float[] descriptor = embeddingBatcher.embed(face != null ? cropFace(image, face) : cropFace(image));
+        Map<String, Object> result = findBestMatch(descriptor, classSection);
+        // Another shard may hold the face, so only complete sharded answers are reused
+        if (result != null ? !result.containsKey("partial") : !shardAssignment.isSharded()) {
+            recognitionCache.put(hash, classSection, galleryVersion, result);
+        }
+        return result;
+    }
+    
+    private Map<String, Object> search(float[] probe, String classSection, String scope) {
+        if (!shardAssignment.isSharded()) {
+            return toMatchResult(classSection != null ? faceGallery.match(probe, classSection) : faceGallery.match(probe), scope);
+        }
+        ShardClient.Result result = shardClient.scatter(probe, classSection);
+        Map<String, Object> match = toMatchResult(result.best(), scope);
+        if (match != null && result.isPartial()) {
+            match.put("partial", true);
+            match.put("shards_answered", result.getAnswered());
+        }
+        return match;
+    }
+    
+    private Map<String, Object> toMatchResult(FaceGallery.Match match, String scope) {
+        if (match == null) {
+            return null;
+        }
+        double confidence = Descriptors.toConfidence(match.getSimilarity());
+        logger.debug("Best {} gallery match: {} (confidence {})", scope, match.getStudentId(), String.format("%.3f", confidence));
+        
+        if (confidence >= minConfidence) {
+            Map<String, Object> matchResult = new HashMap<>();
+            matchResult.put("student_id", match.getStudentId());
+            matchResult.put("confidence", confidence);
+            matchResult.put("scope", scope);
+            return matchResult;
+        }
+        return null;
+    }
+    
+    /**
+     * Compare two face images by descriptor similarity; returns {confidence, isMatch}
      */
     public double[] compareFaces(String face1Path, String face2Path) {
         try {
-            if (!isEnabled) {
-                // Without OpenCV, we can't do real face recognition
-                // For demo purposes, return a confidence based on file similarity
-                long file1Size = new File(face1Path).length();
-                long file2Size = new File(face2Path).length();
-                
-                double sizeRatio = Math.min(file1Size, file2Size) / (double) Math.max(file1Size, file2Size);
-                double confidence = sizeRatio * 0.6 + 0.2; // Fake confidence between 0.2 and 0.8
-                boolean isMatch = confidence >= MIN_RECOGNITION_CONFIDENCE;
-                
-                logger.info("Face comparison (simulated): confidence={}, match={}", 
-                        String.format("%.3f", confidence), isMatch);
-                return new double[]{confidence, isMatch ? 1.0 : 0.0};
+            float[] first = extractDescriptor(face1Path);
+            float[] second = extractDescriptor(face2Path);
+            if (first == null || second == null) {
+                return new double[]{0.0, 0.0};
             }
-            
-            // Real OpenCV implementation would go here
-            return new double[]{0.0, 0.0};
+            double confidence = Descriptors.toConfidence(Descriptors.dot(first, second));
+            boolean isMatch = confidence >= minConfidence;
+            logger.debug("Face comparison: confidence={}, match={}", String.format("%.3f", confidence), isMatch);
+            return new double[]{confidence, isMatch ? 1.0 : 0.0};
         } catch (Exception e) {
             logger.error("Error comparing faces: {}", e.getMessage());
             return new double[]{0.0, 0.0};
@@ -99,7 +300,7 @@ public class FaceRecognitionService {
                 }
             }
             
-            if (bestConfidence >= MIN_RECOGNITION_CONFIDENCE) {
+            if (bestConfidence >= minConfidence) {
                 Map<String, Object> matchResult = new HashMap<>();
                 matchResult.put("student_id", bestMatch);
                 matchResult.put("confidence", bestConfidence);
@@ -113,7 +314,11 @@ public class FaceRecognitionService {
         }
     }
     
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+    
     public boolean isLoaded() {
-        return isEnabled;
+        return faceDetector.isLoaded();
     }
 }
@@ -8,12 +8,22 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class FileStorageService {
@@ -23,8 +33,14 @@ public class FileStorageService {
     @Value("${file.upload.dir:uploads}")
     private String uploadDir;
     
-    private static final String FACES_DIR = "faces";
-    private static final String ATTENDANCE_DIR = "attendance";
+    static final String FACES_DIR = "faces";
+    static final String ATTENDANCE_DIR = "attendance";
+    
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "file-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     public FileStorageService() {
         // No initialization in constructor - use @PostConstruct instead
@@ -59,6 +75,18 @@ public class FileStorageService {
         return saveFile(file, FACES_DIR, filenamePrefix);
     }
     
+    /**
+     * Save raw image bytes to faces directory
+     */
+    public String saveFaceImage(byte[] data, String originalFilename, String filenamePrefix) throws IOException {
+        if (data == null || data.length == 0) {
+            logger.debug("No image data");
+            return null;
+        }
+        
+        return saveBytes(data, originalFilename, FACES_DIR, filenamePrefix);
+    }
+    
     /**
      * Save uploaded file to attendance directory
      */
@@ -71,13 +99,66 @@ public class FileStorageService {
         return saveFile(file, ATTENDANCE_DIR, filenamePrefix);
     }
     
+    /**
+     * Claim a unique, empty file in the attendance directory and return its
+     * relative path, so a record can point at it before the data is written
+     */
+    public String reserveAttendanceImage(String originalFilename, String filenamePrefix) throws IOException {
+        String extension = getFileExtension(originalFilename);
+        Path directoryPath = Paths.get(uploadDir).resolve(ATTENDANCE_DIR);
+        String filename = filenamePrefix + extension;
+        for (int counter = 1; ; counter++) {
+            try {
+                Files.createFile(directoryPath.resolve(filename));
+                return (uploadDir + File.separator + ATTENDANCE_DIR + File.separator + filename).replace("\\", "/");
+            } catch (FileAlreadyExistsException e) {
+                filename = filenamePrefix + "_" + counter + extension;
+            }
+        }
+    }
+    
+    /**
+     * Write data to a reserved path on the background writer.
+     * {@code onFailure} runs with the path if the write fails; the file is removed.
+     */
+    public void writeAsync(String relativePath, byte[] data, Consumer<String> onFailure) {
+        writer.execute(() -> {
+            try {
+                Files.write(Paths.get(relativePath), data);
+                logger.debug("File written in background: {} ({} bytes)", relativePath, data.length);
+            } catch (IOException e) {
+                logger.error("Error writing {} in background: {}", relativePath, e.getMessage(), e);
+                deleteFile(relativePath);
+                onFailure.accept(relativePath);
+            }
+        });
+    }
+    
+    /**
+     * Let queued background writes finish before shutdown
+     */
+    @PreDestroy
+    private void flushWrites() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Background file writes still pending at shutdown");
+        }
+    }
+    
     /**
      * Generic file save method
      */
     private String saveFile(MultipartFile file, String subdirectory, String filenamePrefix) throws IOException {
         logger.debug("Saving file - filename: '{}', content_type: '{}'", file.getOriginalFilename(), file.getContentType());
         
-        String extension = getFileExtension(file.getOriginalFilename());
+        return saveBytes(file.getBytes(), file.getOriginalFilename(), subdirectory, filenamePrefix);
+    }
+    
+    /**
+     * Write bytes under a subdirectory, avoiding filename conflicts
+     */
+    private String saveBytes(byte[] data, String originalFilename, String subdirectory, String filenamePrefix) throws IOException {
+        String extension = getFileExtension(originalFilename);
         String filename = filenamePrefix + extension;
         
         Path directoryPath = Paths.get(uploadDir).resolve(subdirectory);
@@ -94,8 +175,8 @@ public class FileStorageService {
         logger.debug("Writing file to: {}", filePath);
         
         try {
-            Files.write(filePath, file.getBytes());
-            logger.debug("File written successfully, size: {} bytes", file.getSize());
+            Files.write(filePath, data);
+            logger.debug("File written successfully, size: {} bytes", data.length);
             
             // Return relative path
             String relativePath = uploadDir + File.separator + subdirectory + File.separator + filename;
@@ -143,6 +224,36 @@ public class FileStorageService {
         }
     }
     
+    /**
+     * Delete many files on the background writer, after any writes already
+     * queued for them, logging one summary line instead of one per file
+     */
+    public void deleteFilesAsync(Collection<String> filePaths) {
+        if (filePaths.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(filePaths);
+        writer.execute(() -> {
+            int deleted = 0;
+            int failed = 0;
+            for (String filePath : paths) {
+                try {
+                    if (Files.deleteIfExists(Paths.get(filePath))) {
+                        deleted++;
+                    }
+                } catch (IOException | InvalidPathException e) {
+                    failed++;
+                    logger.debug("Could not delete {}: {}", filePath, e.getMessage());
+                }
+            }
+            if (failed > 0) {
+                logger.warn("Deleted {} of {} files, {} could not be deleted", deleted, paths.size(), failed);
+            } else {
+                logger.info("Deleted {} files", deleted);
+            }
+        });
+    }
+    
     /**
      * Get file content
      */
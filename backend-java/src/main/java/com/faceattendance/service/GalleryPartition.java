@@ -0,0 +1,333 @@
+package com.faceattendance.service;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense descriptor storage for one gallery partition.
+ * Centroids are packed into one flat array, either as floats or, in quantized
+ * mode, as int8 vectors with a per-vector scale. Templates used for re-ranking
+ * are full precision and live in the gallery-wide {@link DescriptorArena}; a
+ * slot here only records their arena slots. When the arena is direct the
+ * centroids move to direct buffers too; the heap path keeps plain arrays so
+ * its scan loops stay JIT-vectorizable.
+ * Not thread-safe; {@link FaceGallery} guards all access.
+ */
+final class GalleryPartition {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final DescriptorArena arena;
+    private final boolean quantized;
+    private final boolean direct;
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<int[]> templatesBySlot = new ArrayList<>();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private float[] centroids;
+    private byte[] quantizedCentroids;
+    private FloatBuffer directCentroids;
+    private ByteBuffer directQuantizedCentroids;
+    private float[] centroidScales;
+    private int size;
+
+    GalleryPartition(DescriptorArena arena, boolean quantized) {
+        this.arena = arena;
+        this.quantized = quantized;
+        this.direct = arena.isDirect();
+        int length = INITIAL_CAPACITY * Descriptors.LENGTH;
+        if (quantized) {
+            centroidScales = new float[INITIAL_CAPACITY];
+            if (direct) {
+                directQuantizedCentroids = DescriptorArena.allocateBytes(length);
+            } else {
+                quantizedCentroids = new byte[length];
+            }
+        } else if (direct) {
+            directCentroids = DescriptorArena.allocateFloats(length);
+        } else {
+            centroids = new float[length];
+        }
+    }
+
+    /**
+     * Replace a student's templates, copying them into the arena
+     */
+    void put(String studentId, List<float[]> templates) {
+        int[] handles = new int[templates.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = arena.add(templates.get(i));
+        }
+        putHandles(studentId, handles);
+    }
+
+    /**
+     * Replace a student's templates with descriptors already in the arena,
+     * e.g. when a student moves between partitions
+     */
+    void putHandles(String studentId, int[] handles) {
+        Integer slot = slotById.get(studentId);
+        if (slot == null) {
+            slot = size++;
+            ensureCapacity(size);
+            slotById.put(studentId, slot);
+            ids[slot] = studentId;
+            templatesBySlot.add(handles);
+        } else {
+            freeAll(templatesBySlot.set(slot, handles));
+        }
+        writeCentroid(slot);
+    }
+
+    void addTemplate(String studentId, float[] descriptor) {
+        Integer slot = slotById.get(studentId);
+        if (slot == null) {
+            putHandles(studentId, new int[] {arena.add(descriptor)});
+            return;
+        }
+        int[] current = templatesBySlot.get(slot);
+        int[] handles = Arrays.copyOf(current, current.length + 1);
+        handles[current.length] = arena.add(descriptor);
+        templatesBySlot.set(slot, handles);
+        writeCentroid(slot);
+    }
+
+    /**
+     * Remove a student and return their arena slots without freeing them;
+     * the last slot is moved into the hole to keep the scan dense
+     */
+    int[] remove(String studentId) {
+        Integer slot = slotById.remove(studentId);
+        if (slot == null) {
+            return null;
+        }
+        int[] removed = templatesBySlot.get(slot);
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            templatesBySlot.set(slot, templatesBySlot.get(last));
+            int from = last * Descriptors.LENGTH;
+            int to = slot * Descriptors.LENGTH;
+            if (quantized) {
+                if (direct) {
+                    for (int i = 0; i < Descriptors.LENGTH; i++) {
+                        directQuantizedCentroids.put(to + i, directQuantizedCentroids.get(from + i));
+                    }
+                } else {
+                    System.arraycopy(quantizedCentroids, from, quantizedCentroids, to, Descriptors.LENGTH);
+                }
+                centroidScales[slot] = centroidScales[last];
+            } else if (direct) {
+                for (int i = 0; i < Descriptors.LENGTH; i++) {
+                    directCentroids.put(to + i, directCentroids.get(from + i));
+                }
+            } else {
+                System.arraycopy(centroids, from, centroids, to, Descriptors.LENGTH);
+            }
+            slotById.put(ids[slot], slot);
+        }
+        ids[last] = null;
+        templatesBySlot.remove(last);
+        return removed;
+    }
+
+    /**
+     * First pass: offer every centroid score to the candidate list.
+     * In quantized mode scores are integer dot products against the int8 probe,
+     * scaled per centroid; they rank like the float scores but are not equal to them.
+     * The heap int8 scan computes all dot products first and ranks them afterwards.
+     */
+    void scanCentroids(float[] probe, byte[] quantizedProbe, Candidates candidates) {
+        if (quantized && direct) {
+            for (int slot = 0; slot < size; slot++) {
+                int dot = Descriptors.dot(quantizedProbe, directQuantizedCentroids, slot * Descriptors.LENGTH);
+                candidates.offer(this, slot, dot * centroidScales[slot]);
+            }
+        } else if (quantized) {
+            int[] dots = candidates.dotScratch(size);
+            Descriptors.dot(quantizedProbe, quantizedCentroids, size, dots);
+            for (int slot = 0; slot < size; slot++) {
+                candidates.offer(this, slot, dots[slot] * centroidScales[slot]);
+            }
+        } else if (direct) {
+            for (int slot = 0; slot < size; slot++) {
+                candidates.offer(this, slot, Descriptors.dot(probe, directCentroids, slot * Descriptors.LENGTH));
+            }
+        } else {
+            for (int slot = 0; slot < size; slot++) {
+                candidates.offer(this, slot, Descriptors.dot(probe, centroids, slot * Descriptors.LENGTH));
+            }
+        }
+    }
+
+    /**
+     * Second pass: best score of a probe against all of one slot's templates
+     */
+    float rerank(float[] probe, int slot) {
+        float best = Float.NEGATIVE_INFINITY;
+        for (int handle : templatesBySlot.get(slot)) {
+            best = Math.max(best, arena.dot(probe, handle));
+        }
+        return best;
+    }
+
+    /**
+     * Visit every student with a copy of their templates
+     */
+    void forEach(String section, FaceGallery.Visitor visitor) {
+        for (int slot = 0; slot < size; slot++) {
+            visitor.visit(ids[slot], section, templates(slot));
+        }
+    }
+
+    String idAt(int slot) {
+        return ids[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int templateCount() {
+        int count = 0;
+        for (int[] handles : templatesBySlot) {
+            count += handles.length;
+        }
+        return count;
+    }
+
+    private List<float[]> templates(int slot) {
+        int[] handles = templatesBySlot.get(slot);
+        List<float[]> templates = new ArrayList<>(handles.length);
+        for (int handle : handles) {
+            templates.add(arena.get(handle));
+        }
+        return templates;
+    }
+
+    private void freeAll(int[] handles) {
+        for (int handle : handles) {
+            arena.free(handle);
+        }
+    }
+
+    private void writeCentroid(int slot) {
+        float[] centroid = new float[Descriptors.LENGTH];
+        for (int handle : templatesBySlot.get(slot)) {
+            arena.accumulate(handle, centroid);
+        }
+        Descriptors.normalize(centroid);
+        int offset = slot * Descriptors.LENGTH;
+        if (quantized) {
+            centroidScales[slot] = direct
+                    ? Descriptors.quantize(centroid, directQuantizedCentroids, offset)
+                    : Descriptors.quantize(centroid, quantizedCentroids, offset);
+        } else if (direct) {
+            for (int i = 0; i < Descriptors.LENGTH; i++) {
+                directCentroids.put(offset + i, centroid[i]);
+            }
+        } else {
+            System.arraycopy(centroid, 0, centroids, offset, Descriptors.LENGTH);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > ids.length) {
+            int capacity = Math.max(required, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            int length = capacity * Descriptors.LENGTH;
+            if (quantized) {
+                centroidScales = Arrays.copyOf(centroidScales, capacity);
+                if (direct) {
+                    ByteBuffer grown = DescriptorArena.allocateBytes(length);
+                    grown.put(directQuantizedCentroids.rewind()).rewind();
+                    directQuantizedCentroids = grown;
+                } else {
+                    quantizedCentroids = Arrays.copyOf(quantizedCentroids, length);
+                }
+            } else if (direct) {
+                FloatBuffer grown = DescriptorArena.allocateFloats(length);
+                grown.put(directCentroids.rewind()).rewind();
+                directCentroids = grown;
+            } else {
+                centroids = Arrays.copyOf(centroids, length);
+            }
+        }
+    }
+
+    /**
+     * Fixed-size, score-ordered list of the best centroid hits across partitions
+     */
+    static final class Candidates {
+        private final GalleryPartition[] partitions;
+        private final int[] slots;
+        private final float[] scores;
+        private int[] dotScratch;
+        private int count;
+
+        Candidates(int k) {
+            partitions = new GalleryPartition[k];
+            slots = new int[k];
+            scores = new float[k];
+        }
+
+        /**
+         * Per-query buffer for a partition's integer dot products, reused across partitions
+         */
+        int[] dotScratch(int size) {
+            if (dotScratch == null || dotScratch.length < size) {
+                dotScratch = new int[size];
+            }
+            return dotScratch;
+        }
+
+        void offer(GalleryPartition partition, int slot, float score) {
+            int k = scores.length;
+            if (count == k && score <= scores[k - 1]) {
+                return;
+            }
+            int i = count < k ? count++ : k - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                partitions[i] = partitions[i - 1];
+                slots[i] = slots[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            partitions[i] = partition;
+            slots[i] = slot;
+            scores[i] = score;
+        }
+
+        /**
+         * Re-rank every candidate against its templates and return the best
+         */
+        FaceGallery.Match best(float[] probe) {
+            String bestId = null;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                float score = partitions[i].rerank(probe, slots[i]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestId = partitions[i].idAt(slots[i]);
+                }
+            }
+            return bestId != null ? new FaceGallery.Match(bestId, bestScore) : null;
+        }
+
+        /**
+         * Re-rank every candidate and return up to {@code limit} of them, best first
+         */
+        List<FaceGallery.Match> ranked(float[] probe, int limit) {
+            List<FaceGallery.Match> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                matches.add(new FaceGallery.Match(partitions[i].idAt(slots[i]), partitions[i].rerank(probe, slots[i])));
+            }
+            matches.sort((a, b) -> Float.compare(b.getSimilarity(), a.getSimilarity()));
+            return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+        }
+    }
+}
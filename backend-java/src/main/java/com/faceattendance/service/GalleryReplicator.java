@@ -0,0 +1,163 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.FaceTemplate;
+import com.faceattendance.model.Student;
+import com.faceattendance.model.StudentChange;
+import com.faceattendance.repository.FaceTemplateRepository;
+import com.faceattendance.repository.StudentRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps this node's gallery in step with writes made by other instances
+ * sharing the database. Polls the roster change log for rows past the last
+ * applied position and reloads each changed student from the database;
+ * rows this node wrote itself were already applied locally and are skipped.
+ * The position never moves past a gap in the change sequence that a slower
+ * transaction may still fill (see {@link RosterSyncService#settledChangesSince}).
+ * Every write keeps its own row until it is older than
+ * {@code roster.sync.retention-ms}, so another node's write to a student this
+ * node changed afterwards is still in the log and still gets applied.
+ * The recognition cache follows the gallery version, so it is invalidated by
+ * the same update. With replication disabled the position still advances over
+ * settled rows without applying them, so it always marks how far the gallery
+ * is known to be current; the gallery snapshot records it.
+ */
+@Component
+public class GalleryReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(GalleryReplicator.class);
+
+    @Value("${cluster.replication.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cluster.replication.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private RosterSyncService rosterSyncService;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FaceTemplateRepository faceTemplateRepository;
+
+    @Autowired
+    private FaceGallery faceGallery;
+
+    @Autowired
+    private CheckInRegistry checkInRegistry;
+
+    private volatile long position = -1;
+    private volatile long latest;
+    private volatile double lagSeconds;
+    private final AtomicLong applied = new AtomicLong();
+
+    public GalleryReplicator(MeterRegistry registry) {
+        Gauge.builder("cluster.replication.position", this, r -> r.position)
+                .description("Last roster change sequence applied to the local gallery")
+                .register(registry);
+        Gauge.builder("cluster.replication.latest", this, r -> r.latest)
+                .description("Newest roster change sequence in the database")
+                .register(registry);
+        Gauge.builder("cluster.replication.lag.seconds", this, r -> r.lagSeconds)
+                .description("Age of the oldest roster change not yet applied locally")
+                .register(registry);
+        FunctionCounter.builder("cluster.replication.applied", applied, AtomicLong::get)
+                .description("Students reloaded from changes made by other nodes")
+                .register(registry);
+    }
+
+    /**
+     * Begin replicating from the change sequence the gallery was loaded at
+     */
+    public void start(long loadedAt) {
+        position = loadedAt;
+        latest = loadedAt;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.replication.interval-ms:1000}")
+    public synchronized void poll() {
+        if (position < 0) {
+            return;
+        }
+        try {
+            List<StudentChange> changes;
+            do {
+                changes = rosterSyncService.settledChangesSince(position, batchSize);
+                if (changes.isEmpty()) {
+                    break;
+                }
+                Set<String> remote = new LinkedHashSet<>();
+                for (StudentChange change : changes) {
+                    if (enabled && !rosterSyncService.getNodeId().equals(change.getOrigin())) {
+                        remote.add(change.getStudentId());
+                    }
+                }
+                if (!remote.isEmpty()) {
+                    apply(remote);
+                    logger.debug("Replicated {} student changes up to {}", remote.size(), changes.get(changes.size() - 1).getId());
+                }
+                position = changes.get(changes.size() - 1).getId();
+            } while (changes.size() == batchSize);
+
+            latest = Math.max(position, rosterSyncService.latestVersion());
+            Optional<StudentChange> pending = rosterSyncService.firstChangeAfter(position);
+            lagSeconds = pending.isPresent()
+                    ? Math.max(0, Duration.between(pending.get().getChangedAt(), rosterSyncService.databaseTime()).toMillis() / 1000.0)
+                    : 0.0;
+        } catch (Exception e) {
+            logger.warn("Gallery replication poll failed at {}: {}", position, e.getMessage());
+        }
+    }
+
+    /**
+     * Reload the given students' gallery entries from the database
+     */
+    private void apply(Set<String> studentIds) {
+        Map<String, Student> students = new HashMap<>();
+        for (Student student : studentRepository.findByStudentIdIn(studentIds)) {
+            students.put(student.getStudentId(), student);
+        }
+        Map<String, List<float[]>> templates = new HashMap<>();
+        for (FaceTemplate template : faceTemplateRepository.findByStudentIdInOrderByIdAsc(studentIds)) {
+            float[] descriptor = Descriptors.fromBytes(template.getDescriptor());
+            if (descriptor != null) {
+                templates.computeIfAbsent(template.getStudentId(), id -> new ArrayList<>()).add(descriptor);
+            }
+        }
+        for (String studentId : studentIds) {
+            Student student = students.get(studentId);
+            if (student == null) {
+                faceGallery.remove(studentId);
+                checkInRegistry.clear(studentId, LocalDate.now());
+            } else {
+                faceGallery.put(studentId, student.getClassSection(), templates.get(studentId));
+            }
+            applied.incrementAndGet();
+        }
+    }
+}
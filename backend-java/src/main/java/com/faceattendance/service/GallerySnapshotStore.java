@@ -0,0 +1,255 @@
+package com.faceattendance.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the face gallery as a binary snapshot so startup does not have to
+ * read and decode every template row.
+ *
+ * Layout (header and id table big-endian):
+ * <pre>
+ *   header     magic "FAGS", format version, descriptor length,
+ *              student count, template count, change position, created-at millis
+ *   id table   per student: id (u16 length + UTF-8), section (u16 length + UTF-8,
+ *              0xFFFF for none), template count (int)
+ *   padding    to a 4-byte boundary
+ *   block      template count x descriptor length little-endian floats,
+ *              fixed stride, in id-table order
+ * </pre>
+ * The file is memory-mapped for reading and the block is copied straight into
+ * the gallery's storage. The change position is the roster change sequence the
+ * gallery reflected when it was written; students with change rows after it
+ * are reloaded from the database.
+ */
+@Component
+public class GallerySnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(GallerySnapshotStore.class);
+    private static final int MAGIC = 0x46414753;
+    private static final int FORMAT_VERSION = 2;
+    private static final int NO_SECTION = 0xFFFF;
+
+    @Value("${face.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${face.snapshot.path:data/gallery.snapshot}")
+    private String snapshotPath;
+
+    @Autowired
+    private FaceGallery faceGallery;
+
+    @Autowired
+    private GalleryReplicator galleryReplicator;
+
+    private volatile long writtenVersion = -1;
+
+    /**
+     * A mapped snapshot: the id table plus a view of the descriptor block
+     */
+    public static final class Snapshot {
+        private final long changePosition;
+        private final String[] studentIds;
+        private final String[] sections;
+        private final int[] templateCounts;
+        private final FloatBuffer descriptors;
+
+        Snapshot(long changePosition, String[] studentIds, String[] sections, int[] templateCounts, FloatBuffer descriptors) {
+            this.changePosition = changePosition;
+            this.studentIds = studentIds;
+            this.sections = sections;
+            this.templateCounts = templateCounts;
+            this.descriptors = descriptors;
+        }
+
+        public long getChangePosition() { return changePosition; }
+        public String[] getStudentIds() { return studentIds; }
+        public String[] getSections() { return sections; }
+        public int[] getTemplateCounts() { return templateCounts; }
+        /** Descriptors back to back in id-table order, backed by the mapped file */
+        public FloatBuffer getDescriptors() { return descriptors; }
+    }
+
+    /**
+     * Map the snapshot and parse its id table; returns null if it is disabled,
+     * missing or unreadable. Descriptors are not copied.
+     */
+    public Snapshot read() {
+        if (!enabled) {
+            return null;
+        }
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            logger.info("No gallery snapshot at {}", path);
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != Descriptors.LENGTH) {
+                logger.warn("Ignoring gallery snapshot {} with incompatible header", path);
+                return null;
+            }
+            int studentCount = buffer.getInt();
+            int templateCount = buffer.getInt();
+            long changePosition = buffer.getLong();
+            buffer.getLong(); // created-at
+
+            String[] ids = new String[studentCount];
+            String[] sections = new String[studentCount];
+            int[] counts = new int[studentCount];
+            for (int i = 0; i < studentCount; i++) {
+                ids[i] = readString(buffer);
+                sections[i] = readString(buffer);
+                counts[i] = buffer.getInt();
+            }
+            buffer.position(align(buffer.position()));
+
+            FloatBuffer block = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            if (block.remaining() < (long) templateCount * Descriptors.LENGTH) {
+                logger.warn("Ignoring truncated gallery snapshot {}", path);
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            return new Snapshot(changePosition, ids, sections, counts, block);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Could not read gallery snapshot {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot if the gallery changed since the last write.
+     * Also runs on shutdown so the next start replays as little as possible.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${face.snapshot.interval-ms:300000}",
+            initialDelayString = "${face.snapshot.interval-ms:300000}")
+    public void writeIfChanged() {
+        if (enabled && faceGallery.version() != writtenVersion) {
+            write();
+        }
+    }
+
+    /**
+     * Write the current gallery to a temp file and atomically replace the snapshot
+     */
+    public synchronized void write() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // Read the position first: the gallery already holds every change up to
+        // it, and students changed after it are reloaded from the DB on load
+        long changePosition = galleryReplicator.getPosition();
+        if (changePosition < 0) {
+            return;
+        }
+        long version = faceGallery.version();
+
+        List<String> ids = new ArrayList<>();
+        List<String> sections = new ArrayList<>();
+        List<List<float[]>> templates = new ArrayList<>();
+        faceGallery.forEach((studentId, classSection, studentTemplates) -> {
+            ids.add(studentId);
+            sections.add(classSection);
+            templates.add(studentTemplates);
+        });
+        int templateCount = 0;
+        for (List<float[]> list : templates) {
+            templateCount += list.size();
+        }
+
+        Path path = Paths.get(snapshotPath);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(Descriptors.LENGTH);
+                out.writeInt(ids.size());
+                out.writeInt(templateCount);
+                out.writeLong(changePosition);
+                out.writeLong(System.currentTimeMillis());
+                for (int i = 0; i < ids.size(); i++) {
+                    writeString(out, ids.get(i));
+                    writeString(out, sections.get(i));
+                    out.writeInt(templates.get(i).size());
+                }
+                for (int pad = align(out.size()) - out.size(); pad > 0; pad--) {
+                    out.writeByte(0);
+                }
+                for (List<float[]> list : templates) {
+                    for (float[] descriptor : list) {
+                        out.write(Descriptors.toBytes(descriptor));
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writtenVersion = version;
+            logger.info("Gallery snapshot written: {} students, {} templates in {} ms",
+                    ids.size(), templateCount, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("Error writing gallery snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record that the gallery at this version already matches the file on disk
+     */
+    public void markCurrent(long version) {
+        writtenVersion = version;
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NO_SECTION);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NO_SECTION) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
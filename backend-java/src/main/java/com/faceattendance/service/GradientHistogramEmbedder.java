@@ -0,0 +1,84 @@
+package com.faceattendance.service;
+
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default embedder: a 4x4 grid of gradient orientation histograms over a
+ * 64 px grayscale crop, mean-centered and L2-normalized. Pure Java, one crop
+ * at a time, so a batch costs the same as its crops.
+ */
+@Component(GradientHistogramEmbedder.NAME)
+public class GradientHistogramEmbedder implements FaceEmbedder {
+
+    public static final String NAME = "gradient-histogram";
+
+    private static final int IMAGE_SIZE = 64;
+    private static final int GRID = 4;
+    private static final int BINS = Descriptors.LENGTH / (GRID * GRID);
+
+    @Override
+    public List<float[]> embed(List<BufferedImage> faces) {
+        List<float[]> descriptors = new ArrayList<>(faces.size());
+        for (BufferedImage face : faces) {
+            descriptors.add(describe(face));
+        }
+        return descriptors;
+    }
+
+    @Override
+    public int inputSize() {
+        return IMAGE_SIZE;
+    }
+
+    private float[] describe(BufferedImage image) {
+        int n = IMAGE_SIZE;
+        
+        // Center square crop scaled to a small grayscale patch
+        int side = Math.min(image.getWidth(), image.getHeight());
+        int x0 = (image.getWidth() - side) / 2;
+        int y0 = (image.getHeight() - side) / 2;
+        BufferedImage gray = new BufferedImage(n, n, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, n, n, x0, y0, x0 + side, y0 + side, null);
+        g.dispose();
+        
+        int[] pixels = new int[n * n];
+        gray.getRaster().getPixels(0, 0, n, n, pixels);
+        
+        float[] descriptor = new float[Descriptors.LENGTH];
+        int cellSize = n / GRID;
+        for (int y = 1; y < n - 1; y++) {
+            for (int x = 1; x < n - 1; x++) {
+                int gx = pixels[y * n + x + 1] - pixels[y * n + x - 1];
+                int gy = pixels[(y + 1) * n + x] - pixels[(y - 1) * n + x];
+                if (gx == 0 && gy == 0) {
+                    continue;
+                }
+                double angle = Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += Math.PI;
+                }
+                int bin = Math.min(BINS - 1, (int) (angle / Math.PI * BINS));
+                int cell = (y / cellSize) * GRID + (x / cellSize);
+                descriptor[cell * BINS + bin] += (float) Math.sqrt(gx * gx + gy * gy);
+            }
+        }
+        
+        float mean = 0f;
+        for (float v : descriptor) {
+            mean += v;
+        }
+        mean /= descriptor.length;
+        for (int i = 0; i < descriptor.length; i++) {
+            descriptor[i] -= mean;
+        }
+        return Descriptors.normalize(descriptor);
+    }
+}
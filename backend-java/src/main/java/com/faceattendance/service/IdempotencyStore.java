@@ -0,0 +1,339 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.IdempotencyRecord;
+import com.faceattendance.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers responses by Idempotency-Key so a kiosk retrying an upload gets
+ * the original answer instead of a second image save, recognition pass and
+ * database write. A duplicate that arrives while the first request is still
+ * running waits for it and shares its response.
+ *
+ * A key is bound to a fingerprint of its first request (the operation plus a
+ * SHA-256 of its parameters and body); reusing it for a different request is
+ * answered with 422 instead of the unrelated stored response.
+ *
+ * Keys live in a bounded in-memory map for {@code idempotency.ttl-ms}; only
+ * finished requests are evicted to keep it under {@code max-entries}. With
+ * {@code idempotency.persist=true} responses are also saved to the database so
+ * they survive a restart. Server errors are never remembered, so those
+ * requests can be retried.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+    private static final int MAX_KEY_LENGTH = 255;
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMillis;
+
+    @Value("${idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${idempotency.wait-ms:30000}")
+    private long waitMillis;
+
+    @Value("${idempotency.persist:false}")
+    private boolean persist;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private static final class Entry {
+        final long createdAt;
+        final String fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        Entry(long createdAt, String fingerprint) {
+            this.createdAt = createdAt;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    public IdempotencyStore(MeterRegistry registry) {
+        FunctionCounter.builder("idempotency.requests", executed, AtomicLong::get)
+                .tag("result", "executed")
+                .description("Requests carrying an Idempotency-Key")
+                .register(registry);
+        FunctionCounter.builder("idempotency.requests", replayed, AtomicLong::get)
+                .tag("result", "replayed")
+                .description("Requests carrying an Idempotency-Key")
+                .register(registry);
+        FunctionCounter.builder("idempotency.requests", coalesced, AtomicLong::get)
+                .tag("result", "coalesced")
+                .description("Requests carrying an Idempotency-Key")
+                .register(registry);
+        Gauge.builder("idempotency.size", this, IdempotencyStore::size)
+                .register(registry);
+    }
+
+    /**
+     * Run {@code request} once per key; repeats of the same operation with the
+     * same {@code body} (parameters, uploads or payload, see
+     * {@link #fingerprint}) get the stored response with an Idempotent-Replayed
+     * header. Requests without a key run as usual.
+     */
+    public ResponseEntity<?> execute(String key, String operation, Supplier<ResponseEntity<?>> request,
+                                     Object... body) {
+        if (key == null || key.trim().isEmpty()) {
+            return request.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters",
+                    "error_type", "invalid_request"
+            ));
+        }
+        String storeKey = key.trim();
+        String fingerprint = fingerprint(operation, body);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(storeKey);
+            if (entry == null) {
+                entry = new Entry(now, fingerprint);
+                entries.put(storeKey, entry);
+                owner = true;
+            }
+            evict(now);
+        }
+        if (!owner) {
+            if (!entry.fingerprint.equals(fingerprint)) {
+                return keyReused();
+            }
+            (entry.response.isDone() ? replayed : coalesced).incrementAndGet();
+            return awaitReplay(entry);
+        }
+
+        IdempotencyRecord record = persist ? loadPersisted(storeKey) : null;
+        if (record != null && !fingerprint.equals(record.getFingerprint())) {
+            forget(storeKey, entry);
+            entry.response.complete(keyReused());
+            return keyReused();
+        }
+        ResponseEntity<?> stored = record != null ? stored(record) : null;
+        if (stored != null) {
+            replayed.incrementAndGet();
+            entry.response.complete(stored);
+            return replay(stored);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            forget(storeKey, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        executed.incrementAndGet();
+        entry.response.complete(response);
+        if (response.getStatusCode().is5xxServerError()) {
+            forget(storeKey, entry);
+        } else if (persist) {
+            save(storeKey, fingerprint, response);
+        }
+        return response;
+    }
+
+    /**
+     * SHA-256 over the operation and each part of a request: strings, byte
+     * arrays and streams (multipart uploads, spooled bodies) are hashed as
+     * they are, other values as their JSON form
+     */
+    public String fingerprint(String operation, Object... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, operation.getBytes(StandardCharsets.UTF_8));
+        try {
+            for (Object part : parts) {
+                if (part == null) {
+                    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(-1).array());
+                } else if (part instanceof byte[]) {
+                    update(digest, (byte[]) part);
+                } else if (part instanceof String) {
+                    update(digest, ((String) part).getBytes(StandardCharsets.UTF_8));
+                } else if (part instanceof InputStreamSource) {
+                    long length = 0;
+                    try (InputStream in = ((InputStreamSource) part).getInputStream()) {
+                        byte[] buffer = new byte[8192];
+                        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                            digest.update(buffer, 0, n);
+                            length += n;
+                        }
+                    }
+                    digest.update(ByteBuffer.allocate(Long.BYTES).putLong(length).array());
+                } else {
+                    update(digest, objectMapper.writeValueAsBytes(part));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read request body", e);
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Drop persisted responses older than the TTL
+     */
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        if (persist) {
+            int purged = repository.deleteOlderThan(LocalDateTime.now().minusNanos(ttlMillis * 1_000_000L));
+            if (purged > 0) {
+                logger.debug("Purged {} expired idempotency keys", purged);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private ResponseEntity<?> awaitReplay(Entry entry) {
+        try {
+            return replay(entry.response.get(waitMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "success", false,
+                    "message", "A request with this Idempotency-Key is still being processed",
+                    "error_type", "in_progress"
+            ));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for duplicate request", e);
+        } catch (ExecutionException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "message", "The original request failed, retry"
+            ));
+        }
+    }
+
+    private static ResponseEntity<?> keyReused() {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of(
+                "success", false,
+                "message", "Idempotency-Key was already used for a different request",
+                "error_type", "idempotency_key_reused"
+        ));
+    }
+
+    // Length-prefixed so adjacent parts cannot run into each other
+    private static void update(MessageDigest digest, byte[] bytes) {
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static ResponseEntity<?> replay(ResponseEntity<?> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    private void forget(String storeKey, Entry entry) {
+        synchronized (entries) {
+            entries.remove(storeKey, entry);
+        }
+    }
+
+    private IdempotencyRecord loadPersisted(String storeKey) {
+        try {
+            Optional<IdempotencyRecord> record = repository.findById(storeKey);
+            LocalDateTime cutoff = LocalDateTime.now().minusNanos(ttlMillis * 1_000_000L);
+            if (record.isEmpty() || record.get().getCreatedAt().isBefore(cutoff)) {
+                return null;
+            }
+            return record.get();
+        } catch (Exception e) {
+            logger.warn("Could not read idempotency key {}: {}", storeKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private static ResponseEntity<?> stored(IdempotencyRecord record) {
+        return ResponseEntity.status(record.getStatus())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(record.getBody());
+    }
+
+    private void save(String storeKey, String fingerprint, ResponseEntity<?> response) {
+        try {
+            String body = response.getBody() != null ? objectMapper.writeValueAsString(response.getBody()) : null;
+            repository.save(new IdempotencyRecord(storeKey, fingerprint, response.getStatusCode().value(), body));
+        } catch (Exception e) {
+            logger.warn("Could not persist idempotency key {}: {}", storeKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Drop expired entries and, while over {@code max-entries}, the oldest
+     * finished ones. Requests still running are kept so their duplicates keep
+     * coalescing; the map can exceed the bound by the number in flight.
+     */
+    private void evict(long now) {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next();
+            if (now - entry.createdAt <= ttlMillis && entries.size() <= maxEntries) {
+                break;
+            }
+            if (entry.response.isDone()) {
+                oldest.remove();
+            }
+        }
+    }
+}
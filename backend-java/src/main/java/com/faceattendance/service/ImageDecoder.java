@@ -0,0 +1,135 @@
+package com.faceattendance.service;
+
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Decodes uploaded images at reduced scale. Source subsampling makes the codec
+ * skip pixels while decoding, so a phone photo never has to be inflated to
+ * full resolution just to be checked or matched; a source region limits the
+ * decode to one area, such as a detected face.
+ *
+ * Readers are kept per thread and reset between images instead of being
+ * created and disposed for every upload.
+ */
+@Component
+public class ImageDecoder {
+
+    private static final ThreadLocal<Map<ImageReaderSpi, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Decoded image together with the dimensions of the original
+     */
+    public static final class Decoded {
+        private final BufferedImage image;
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final Rectangle region;
+
+        Decoded(BufferedImage image, int sourceWidth, int sourceHeight, Rectangle region) {
+            this.image = image;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.region = region;
+        }
+
+        public BufferedImage getImage() { return image; }
+        public int getSourceWidth() { return sourceWidth; }
+        public int getSourceHeight() { return sourceHeight; }
+
+        /** Area of the original that was decoded, in source pixels */
+        public Rectangle getRegion() { return new Rectangle(region); }
+
+        /**
+         * Map a rectangle in decoded-image pixels back to source pixels
+         */
+        public Rectangle toSource(Rectangle r) {
+            double sx = region.width / (double) image.getWidth();
+            double sy = region.height / (double) image.getHeight();
+            return new Rectangle(region.x + (int) Math.round(r.x * sx), region.y + (int) Math.round(r.y * sy),
+                    (int) Math.round(r.width * sx), (int) Math.round(r.height * sy));
+        }
+    }
+
+    /**
+     * Decode so the longer side is at most about {@code maxSide} pixels.
+     * Returns null if the data is not a supported image format.
+     */
+    public Decoded decode(byte[] data, int maxSide) throws IOException {
+        return decodeRegion(data, null, maxSide);
+    }
+
+    /**
+     * Decode only {@code region} of the source (clipped to its bounds; null for the
+     * whole image), subsampled so the region's longer side is at most about
+     * {@code maxSide} pixels. Returns null if the format is unsupported or the
+     * region misses the image.
+     */
+    public Decoded decodeRegion(byte[] data, Rectangle region, int maxSide) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (input == null) {
+                return null;
+            }
+            ImageReader reader = readerFor(input);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                Rectangle area = new Rectangle(0, 0, width, height);
+                if (region != null) {
+                    area = area.intersection(region);
+                    if (area.isEmpty()) {
+                        return null;
+                    }
+                }
+                int factor = Math.max(1, Math.max(area.width, area.height) / Math.max(1, maxSide));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    param.setSourceRegion(area);
+                }
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return new Decoded(reader.read(0, param), width, height, area);
+            } finally {
+                reader.reset();
+            }
+        }
+    }
+
+    /**
+     * This thread's reader for the stream's format, created on first use
+     */
+    private static ImageReader readerFor(ImageInputStream input) throws IOException {
+        Iterator<ImageReaderSpi> providers = IIORegistry.getDefaultInstance()
+                .getServiceProviders(ImageReaderSpi.class, true);
+        while (providers.hasNext()) {
+            ImageReaderSpi provider = providers.next();
+            if (provider.canDecodeInput(input)) {
+                Map<ImageReaderSpi, ImageReader> readers = READERS.get();
+                ImageReader reader = readers.get(provider);
+                if (reader == null) {
+                    reader = provider.createReaderInstance();
+                    readers.put(provider, reader);
+                }
+                return reader;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+package com.faceattendance.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Checks that reject unusable frames before anything is stored or matched:
+ * exposure (brightness histogram), sharpness (variance of the Laplacian) and,
+ * last since it is the most expensive, a detected face of at least the minimum
+ * size. The face box is handed on so matching does not detect again.
+ */
+@Component
+public class ImageQualityGate {
+
+    @Value("${face.quality.enabled:true}")
+    private boolean enabled;
+
+    @Value("${face.quality.min-sharpness:15.0}")
+    private double minSharpness;
+
+    @Value("${face.quality.min-brightness:40}")
+    private double minBrightness;
+
+    @Value("${face.quality.max-brightness:220}")
+    private double maxBrightness;
+
+    @Value("${face.quality.max-clipped-fraction:0.6}")
+    private double maxClippedFraction;
+
+    @Value("${face.quality.min-face-size:80}")
+    private int minFaceSize;
+
+    @Autowired
+    private FaceDetector faceDetector;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Outcome of the checks; {@code reason} is null when the frame is usable
+     */
+    public static final class Result {
+        private final String reason;
+        private final String message;
+        private final double sharpness;
+        private final double brightness;
+        private final Integer faceSize;
+        private final Rectangle face;
+
+        Result(String reason, String message, double sharpness, double brightness, Integer faceSize, Rectangle face) {
+            this.reason = reason;
+            this.message = message;
+            this.sharpness = sharpness;
+            this.brightness = brightness;
+            this.faceSize = faceSize;
+            this.face = face;
+        }
+
+        public boolean isAcceptable() { return reason == null; }
+        public String getReason() { return reason; }
+        public String getMessage() { return message; }
+
+        /** Largest face in the checked image's coordinates, or null if none was detected */
+        public Rectangle getFace() { return face != null ? new Rectangle(face) : null; }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("reason", reason);
+            map.put("sharpness", Math.round(sharpness * 10) / 10.0);
+            map.put("brightness", Math.round(brightness * 10) / 10.0);
+            if (faceSize != null) {
+                map.put("face_size", faceSize);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Assess a reduced-scale decode of the frame. The face size is the width,
+     * in source pixels, of the largest face detected on that decode. Without a
+     * cascade the whole frame is embedded, so its shorter side counts instead.
+     */
+    public Result check(ImageDecoder.Decoded decoded) {
+        BufferedImage image = decoded.getImage();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] gray = toGray(image);
+
+        int[] histogram = new int[256];
+        long sum = 0;
+        for (int v : gray) {
+            histogram[v]++;
+            sum += v;
+        }
+        double brightness = (double) sum / gray.length;
+        double darkFraction = 0;
+        double brightFraction = 0;
+        for (int i = 0; i < 16; i++) {
+            darkFraction += histogram[i];
+            brightFraction += histogram[255 - i];
+        }
+        darkFraction /= gray.length;
+        brightFraction /= gray.length;
+
+        double sharpness = laplacianVariance(gray, width, height);
+
+        if (!enabled) {
+            return new Result(null, null, sharpness, brightness, null, null);
+        }
+        if (brightness < minBrightness || darkFraction > maxClippedFraction) {
+            return reject("too_dark", "Image is too dark, improve the lighting", sharpness, brightness, null, null);
+        }
+        if (brightness > maxBrightness || brightFraction > maxClippedFraction) {
+            return reject("too_bright", "Image is overexposed, avoid direct light", sharpness, brightness, null, null);
+        }
+        if (sharpness < minSharpness) {
+            return reject("blurry", "Image is blurry, hold still and retake", sharpness, brightness, null, null);
+        }
+
+        if (!faceDetector.isLoaded()) {
+            int faceSize = Math.min(decoded.getSourceWidth(), decoded.getSourceHeight());
+            if (faceSize < minFaceSize) {
+                return reject("face_too_small", "Face is too small, move closer to the camera", sharpness, brightness, faceSize, null);
+            }
+            return new Result(null, null, sharpness, brightness, faceSize, null);
+        }
+        Rectangle face = faceDetector.detectLargest(image);
+        if (face == null) {
+            return reject("no_face", "No face found, face the camera", sharpness, brightness, null, null);
+        }
+        int faceSize = decoded.toSource(face).width;
+        if (faceSize < minFaceSize) {
+            return reject("face_too_small", "Face is too small, move closer to the camera", sharpness, brightness, faceSize, face);
+        }
+        return new Result(null, null, sharpness, brightness, faceSize, face);
+    }
+
+    private Result reject(String reason, String message, double sharpness, double brightness, Integer faceSize, Rectangle face) {
+        meterRegistry.counter("face.quality.rejected", "reason", reason).increment();
+        return new Result(reason, message, sharpness, brightness, faceSize, face);
+    }
+
+    private static int[] toGray(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        int[] gray = new int[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            int p = rgb[i];
+            gray[i] = (((p >> 16) & 0xff) * 77 + ((p >> 8) & 0xff) * 150 + (p & 0xff) * 29) >> 8;
+        }
+        return gray;
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian; low values mean few sharp edges
+     */
+    private static double laplacianVariance(int[] gray, int width, int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int lap = gray[i - 1] + gray[i + 1] + gray[i - width] + gray[i + width] - 4 * gray[i];
+                sum += lap;
+                sumSquares += (double) lap * lap;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        return sumSquares / count - mean * mean;
+    }
+}
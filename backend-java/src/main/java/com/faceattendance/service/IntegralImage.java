@@ -0,0 +1,66 @@
+package com.faceattendance.service;
+
+/**
+ * Summed-area table over an 8-bit grayscale image, so the sum of any rectangle
+ * costs four lookups. Squared sums are kept as well when variance is needed.
+ */
+final class IntegralImage {
+
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int[] sums;
+    private final long[] squares;
+
+    /**
+     * @param gray    row-major pixels, {@code width * height} bytes
+     * @param squared also build the squared-sum table
+     */
+    IntegralImage(byte[] gray, int width, int height, boolean squared) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        this.sums = new int[stride * (height + 1)];
+        this.squares = squared ? new long[stride * (height + 1)] : null;
+
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            long rowSquares = 0;
+            int src = y * width;
+            int above = y * stride + 1;
+            int dst = above + stride;
+            for (int x = 0; x < width; x++) {
+                int v = gray[src + x] & 0xFF;
+                rowSum += v;
+                sums[dst + x] = sums[above + x] + rowSum;
+                if (squared) {
+                    rowSquares += v * v;
+                    squares[dst + x] = squares[above + x] + rowSquares;
+                }
+            }
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * Sum of the pixels in [x, x + w) x [y, y + h)
+     */
+    int sum(int x, int y, int w, int h) {
+        int top = y * stride + x;
+        int bottom = (y + h) * stride + x;
+        return sums[bottom + w] - sums[bottom] - sums[top + w] + sums[top];
+    }
+
+    long squareSum(int x, int y, int w, int h) {
+        int top = y * stride + x;
+        int bottom = (y + h) * stride + x;
+        return squares[bottom + w] - squares[bottom] - squares[top + w] + squares[top];
+    }
+}
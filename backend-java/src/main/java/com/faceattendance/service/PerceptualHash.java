@@ -0,0 +1,46 @@
+package com.faceattendance.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash) of an image. Near-identical frames, such as
+ * consecutive kiosk captures of the same person, differ in only a few bits.
+ */
+public final class PerceptualHash {
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHash() {}
+
+    /**
+     * Hash of the image: one bit per horizontally adjacent pixel pair of a 9x8 grayscale thumbnail
+     */
+    public static long dHash(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, WIDTH, HEIGHT, null);
+        g.dispose();
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        gray.getRaster().getPixels(0, 0, WIDTH, HEIGHT, pixels);
+
+        long hash = 0L;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (pixels[y * WIDTH + x] > pixels[y * WIDTH + x + 1]) {
+                    hash |= 1L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,595 @@
+package com.faceattendance.service;
+
+import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.FaceTemplateRepository;
+import com.faceattendance.repository.StudentRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps uploads/attendance from growing by one file per check-in forever.
+ *
+ * A nightly job packs photos of check-ins older than
+ * {@code photos.retention.pack-after-days} into one segment per month under
+ * uploads/attendance/packs ({@code 2026-09.0.pack}) with an index beside it
+ * ({@code 2026-09.0.idx}). Records keep their photo path and {@link #read}
+ * finds the photo in a segment once the loose file is gone. The same job
+ * deletes loose files in uploads/attendance and uploads/faces that no
+ * attendance record, student or template references, and rewrites segments
+ * holding photos whose records were deleted. All file work is paced by
+ * {@code bytes-per-second} and {@code files-per-second} and stops after
+ * {@code max-run-minutes}; the next run carries on.
+ *
+ * Index layout (big-endian, like the gallery snapshot):
+ * <pre>
+ *   header   magic "FAPK", format version
+ *   entry    filename (u16 length + UTF-8), offset (long), length (int)
+ * </pre>
+ * Entries are appended only after the segment data is synced, so a crash
+ * leaves at worst unindexed bytes at the end of a segment. A rewrite writes
+ * the next generation and publishes it by renaming its index into place.
+ */
+@Service
+public class PhotoArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoArchive.class);
+    private static final int MAGIC = 0x4641504B;
+    private static final int FORMAT_VERSION = 1;
+    private static final String PACKS_DIR = "packs";
+    private static final Pattern INDEX_NAME = Pattern.compile("(\\d{4}-\\d{2})\\.(\\d+)\\.idx");
+    private static final int COMMIT_EVERY = 200;
+
+    @Value("${file.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${photos.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${photos.retention.pack-after-days:30}")
+    private int packAfterDays;
+
+    @Value("${photos.retention.grace-minutes:60}")
+    private long graceMinutes;
+
+    @Value("${photos.retention.bytes-per-second:4194304}")
+    private double bytesPerSecond;
+
+    @Value("${photos.retention.files-per-second:100}")
+    private double filesPerSecond;
+
+    @Value("${photos.retention.max-run-minutes:180}")
+    private long maxRunMinutes;
+
+    @Autowired
+    private AttendanceRecordRepository attendanceRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FaceTemplateRepository faceTemplateRepository;
+
+    /** Packed photos by filename */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Live segment generation by month */
+    private final Map<String, Integer> generations = new ConcurrentHashMap<>();
+    /** Held by readers of a segment; a rewrite takes it exclusively to retire the old generation */
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong packed = new AtomicLong();
+    private final AtomicLong swept = new AtomicLong();
+
+    // Runs for hours at most, so keep it off the shared scheduler thread
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "photo-retention");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private static final class Entry {
+        final String month;
+        final int generation;
+        final long offset;
+        final int length;
+
+        Entry(String month, int generation, long offset, int length) {
+            this.month = month;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public PhotoArchive(MeterRegistry registry) {
+        FunctionCounter.builder("photos.retention.packed", packed, AtomicLong::get)
+                .description("Photos moved into month segments")
+                .register(registry);
+        FunctionCounter.builder("photos.retention.swept", swept, AtomicLong::get)
+                .description("Unreferenced photos deleted")
+                .register(registry);
+        Gauge.builder("photos.retention.segment.entries", entries, Map::size)
+                .description("Photos stored in month segments")
+                .register(registry);
+    }
+
+    /**
+     * Load the segment indexes and clear out anything a crashed rewrite left behind
+     */
+    @PostConstruct
+    public void loadIndex() {
+        Path packs = packsDir();
+        try {
+            Files.createDirectories(packs);
+            Map<String, Integer> latest = new HashMap<>();
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(packs)) {
+                for (Path file : dir) {
+                    files.add(file);
+                    Matcher index = INDEX_NAME.matcher(file.getFileName().toString());
+                    if (index.matches()) {
+                        latest.merge(index.group(1), Integer.parseInt(index.group(2)), Math::max);
+                    }
+                }
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                Integer generation = dot > 0 ? latest.get(name.substring(0, dot)) : null;
+                if (generation == null || !name.startsWith(name.substring(0, dot) + "." + generation + ".")
+                        || name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            for (Map.Entry<String, Integer> month : latest.entrySet()) {
+                generations.put(month.getKey(), month.getValue());
+                readIndex(month.getKey(), month.getValue());
+            }
+            if (!entries.isEmpty()) {
+                logger.info("Photo segments loaded: {} photos in {} months", entries.size(), latest.size());
+            }
+        } catch (IOException e) {
+            logger.error("Error loading photo segments: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Photo bytes from uploads/{@code directory}, whether still a loose file
+     * or packed into a segment; null when there is no such photo
+     */
+    public byte[] read(String directory, String filename) throws IOException {
+        boolean attendance = FileStorageService.ATTENDANCE_DIR.equals(directory);
+        if ((!attendance && !FileStorageService.FACES_DIR.equals(directory)) || !isPlainFilename(filename)) {
+            return null;
+        }
+        Path loose = Paths.get(uploadDir, directory, filename);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (attendance) {
+                segmentLock.readLock().lock();
+                try {
+                    Entry entry = entries.get(filename);
+                    if (entry != null) {
+                        return readEntry(entry);
+                    }
+                } finally {
+                    segmentLock.readLock().unlock();
+                }
+            }
+            try {
+                return Files.readAllBytes(loose);
+            } catch (NoSuchFileException e) {
+                // May have been packed since the lookup; look again once
+            }
+        }
+        return null;
+    }
+
+    @Scheduled(cron = "${photos.retention.cron:0 30 2 * * *}")
+    public void scheduleRetention() {
+        if (enabled && running.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                try {
+                    runRetention();
+                } catch (Exception e) {
+                    logger.error("Photo retention failed: {}", e.getMessage(), e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    private void stop() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Sweep unreferenced loose files, pack old photos and rewrite segments
+     * holding deleted photos, within the pacing limits and time budget
+     */
+    void runRetention() throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(maxRunMinutes);
+        // Files touched after this may belong to a check-in or registration still committing
+        long settledBefore = start - TimeUnit.MINUTES.toMillis(graceMinutes);
+        LocalDate packBefore = LocalDate.now().minusDays(packAfterDays);
+        Pacer pacer = new Pacer(bytesPerSecond, filesPerSecond);
+        long packedBefore = packed.get();
+        long sweptBefore = swept.get();
+
+        Map<String, LocalDate> photoDates = new HashMap<>();
+        for (Object[] row : attendanceRepository.findPhotoPathsWithDates()) {
+            photoDates.put(fileName((String) row[0]), (LocalDate) row[1]);
+        }
+        Set<String> faceImages = new HashSet<>();
+        for (String path : studentRepository.findAllFaceImagePaths()) {
+            faceImages.add(fileName(path));
+        }
+        for (String path : faceTemplateRepository.findAllImagePaths()) {
+            faceImages.add(fileName(path));
+        }
+
+        Map<String, List<Path>> toPack = new TreeMap<>();
+        boolean finished = true;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(uploadDir, FileStorageService.ATTENDANCE_DIR))) {
+            for (Path file : dir) {
+                if (System.nanoTime() > deadline) {
+                    finished = false;
+                    break;
+                }
+                if (!Files.isRegularFile(file) || Files.getLastModifiedTime(file).toMillis() > settledBefore) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                LocalDate date = photoDates.get(name);
+                if (date == null || entries.containsKey(name)) {
+                    // Unreferenced, or already packed before a crash stopped the delete
+                    pacer.acquire(0);
+                    sweep(file);
+                } else if (date.isBefore(packBefore)) {
+                    toPack.computeIfAbsent(YearMonth.from(date).toString(), m -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Path>> month : toPack.entrySet()) {
+            if (finished) {
+                finished = pack(month.getKey(), month.getValue(), pacer, deadline);
+            }
+        }
+
+        if (finished) {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(uploadDir, FileStorageService.FACES_DIR))) {
+                for (Path file : dir) {
+                    if (System.nanoTime() > deadline) {
+                        finished = false;
+                        break;
+                    }
+                    if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() <= settledBefore
+                            && !faceImages.contains(file.getFileName().toString())) {
+                        pacer.acquire(0);
+                        sweep(file);
+                    }
+                }
+            }
+        }
+
+        Set<String> staleMonths = new HashSet<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!photoDates.containsKey(entry.getKey())) {
+                staleMonths.add(entry.getValue().month);
+            }
+        }
+        int rewritten = 0;
+        for (String month : staleMonths) {
+            if (finished && System.nanoTime() < deadline) {
+                rewrite(month, photoDates, pacer);
+                rewritten++;
+            } else {
+                finished = false;
+            }
+        }
+
+        logger.info("Photo retention {}: {} packed, {} swept, {} segments rewritten in {} s",
+                finished ? "done" : "stopped at its time limit", packed.get() - packedBefore,
+                swept.get() - sweptBefore, rewritten, (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /**
+     * Append loose photos to the month's segment, committing the index every
+     * {@value #COMMIT_EVERY} photos before their loose files are deleted
+     *
+     * @return false when the time budget ran out
+     */
+    private boolean pack(String month, List<Path> files, Pacer pacer, long deadline)
+            throws IOException, InterruptedException {
+        int generation = generations.computeIfAbsent(month, m -> 0);
+        Path indexPath = segmentPath(month, generation, ".idx");
+        if (!Files.exists(indexPath)) {
+            writeIndex(indexPath, List.of(), List.of());
+        }
+        try (FileChannel segment = FileChannel.open(segmentPath(month, generation, ".pack"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = segment.size();
+            List<String> names = new ArrayList<>();
+            List<Entry> batch = new ArrayList<>();
+            List<Path> loose = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                boolean outOfTime = System.nanoTime() > deadline;
+                Path file = files.get(i);
+                byte[] data = outOfTime ? null : readIfExists(file);
+                if (data != null) {
+                    pacer.acquire(data.length);
+                    writeFully(segment, ByteBuffer.wrap(data), offset);
+                    names.add(file.getFileName().toString());
+                    batch.add(new Entry(month, generation, offset, data.length));
+                    loose.add(file);
+                    offset += data.length;
+                }
+                if (!batch.isEmpty() && (outOfTime || batch.size() >= COMMIT_EVERY || i == files.size() - 1)) {
+                    segment.force(false);
+                    appendIndex(indexPath, names, batch);
+                    for (int j = 0; j < names.size(); j++) {
+                        entries.put(names.get(j), batch.get(j));
+                    }
+                    for (Path packedFile : loose) {
+                        Files.deleteIfExists(packedFile);
+                    }
+                    packed.addAndGet(batch.size());
+                    names.clear();
+                    batch.clear();
+                    loose.clear();
+                }
+                if (outOfTime) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the month's still-referenced photos into the next generation and
+     * retire the current one
+     */
+    private void rewrite(String month, Map<String, LocalDate> photoDates, Pacer pacer)
+            throws IOException, InterruptedException {
+        int generation = generations.get(month);
+        int next = generation + 1;
+        List<String> names = new ArrayList<>();
+        List<Entry> live = new ArrayList<>();
+        List<String> dead = new ArrayList<>();
+        try (FileChannel source = FileChannel.open(segmentPath(month, generation, ".pack"), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(segmentPath(month, next, ".pack"),
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry old = entry.getValue();
+                if (!old.month.equals(month)) {
+                    continue;
+                }
+                if (!photoDates.containsKey(entry.getKey())) {
+                    dead.add(entry.getKey());
+                    continue;
+                }
+                pacer.acquire(old.length);
+                ByteBuffer data = ByteBuffer.allocate(old.length);
+                readFully(source, data, old.offset);
+                data.flip();
+                writeFully(target, data, offset);
+                names.add(entry.getKey());
+                live.add(new Entry(month, next, offset, old.length));
+                offset += old.length;
+            }
+            target.force(false);
+        }
+        writeIndex(segmentPath(month, next, ".idx"), names, live);
+
+        segmentLock.writeLock().lock();
+        try {
+            for (int i = 0; i < names.size(); i++) {
+                entries.put(names.get(i), live.get(i));
+            }
+            for (String name : dead) {
+                entries.remove(name);
+            }
+            generations.put(month, next);
+            Files.deleteIfExists(segmentPath(month, generation, ".idx"));
+            Files.deleteIfExists(segmentPath(month, generation, ".pack"));
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        swept.addAndGet(dead.size());
+        logger.debug("Photo segment {} rewritten: {} kept, {} dropped", month, live.size(), dead.size());
+    }
+
+    private void readIndex(String month, int generation) throws IOException {
+        Path segment = segmentPath(month, generation, ".pack");
+        long segmentSize = Files.exists(segment) ? Files.size(segment) : 0;
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(segmentPath(month, generation, ".idx")));
+        try {
+            if (index.getInt() != MAGIC || index.getInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring photo segment index {} with an unknown format", month);
+                return;
+            }
+            while (index.hasRemaining()) {
+                String name = GallerySnapshotStore.readString(index);
+                long offset = index.getLong();
+                int length = index.getInt();
+                if (offset + length <= segmentSize) {
+                    entries.put(name, new Entry(month, generation, offset, length));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warn("Photo segment index {} ends in a partial entry, ignoring it", month);
+        }
+    }
+
+    /**
+     * Write a complete index under a temp name and rename it into place
+     */
+    private static void writeIndex(Path path, List<String> names, List<Entry> batch) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.write(encode(names, batch));
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), 0);
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void appendIndex(Path path, List<String> names, List<Entry> batch) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer data = ByteBuffer.wrap(encode(names, batch));
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static byte[] encode(List<String> names, List<Entry> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < names.size(); i++) {
+            GallerySnapshotStore.writeString(out, names.get(i));
+            out.writeLong(batch.get(i).offset);
+            out.writeInt(batch.get(i).length);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private byte[] readEntry(Entry entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(entry.month, entry.generation, ".pack"),
+                StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate(entry.length);
+            readFully(channel, data, entry.offset);
+            return data.array();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Photo segment is shorter than its index");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static byte[] readIfExists(Path file) throws IOException {
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void sweep(Path file) {
+        try {
+            if (Files.deleteIfExists(file)) {
+                swept.incrementAndGet();
+                logger.debug("Deleted unreferenced photo {}", file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path packsDir() {
+        return Paths.get(uploadDir, FileStorageService.ATTENDANCE_DIR, PACKS_DIR);
+    }
+
+    private Path segmentPath(String month, int generation, String suffix) {
+        return packsDir().resolve(month + "." + generation + suffix);
+    }
+
+    private static String fileName(String path) {
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return path.substring(slash + 1);
+    }
+
+    private static boolean isPlainFilename(String filename) {
+        return !filename.isEmpty() && !filename.contains("/") && !filename.contains("\\")
+                && !filename.startsWith(".");
+    }
+
+    /**
+     * Spaces work out so the job stays under the configured bytes and files
+     * per second; a limit of 0 or less means unlimited
+     */
+    private static final class Pacer {
+        private final double nanosPerByte;
+        private final double nanosPerFile;
+        private long next = System.nanoTime();
+
+        Pacer(double bytesPerSecond, double filesPerSecond) {
+            this.nanosPerByte = bytesPerSecond > 0 ? 1e9 / bytesPerSecond : 0;
+            this.nanosPerFile = filesPerSecond > 0 ? 1e9 / filesPerSecond : 0;
+        }
+
+        void acquire(long bytes) throws InterruptedException {
+            long now = System.nanoTime();
+            next = Math.max(next, now);
+            long wait = next - now;
+            next += (long) (bytes * nanosPerByte + nanosPerFile);
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.faceattendance.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of match results keyed by perceptual hash of the probe image.
+ * Kiosks send bursts of near-identical frames; any frame within the Hamming
+ * bound of a recent one reuses that frame's result instead of rescanning the gallery.
+ * Entries are invalidated when the gallery changes.
+ */
+@Component
+public class RecognitionCache {
+
+    @Value("${face.cache.ttl-ms:2000}")
+    private long ttlMillis;
+
+    @Value("${face.cache.max-hamming-distance:6}")
+    private int maxHammingDistance;
+
+    @Value("${face.cache.max-entries:256}")
+    private int maxEntries;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Cached outcome; {@code result} is null for a cached "no match"
+     */
+    public static final class Hit {
+        private final Map<String, Object> result;
+
+        Hit(Map<String, Object> result) {
+            this.result = result;
+        }
+
+        public Map<String, Object> getResult() { return result; }
+    }
+
+    private static final class Entry {
+        final long hash;
+        final String scope;
+        final long galleryVersion;
+        final long createdAt;
+        final Map<String, Object> result;
+
+        Entry(long hash, String scope, long galleryVersion, long createdAt, Map<String, Object> result) {
+            this.hash = hash;
+            this.scope = scope;
+            this.galleryVersion = galleryVersion;
+            this.createdAt = createdAt;
+            this.result = result;
+        }
+    }
+
+    public RecognitionCache(MeterRegistry registry) {
+        FunctionCounter.builder("face.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .description("Recognition cache lookups")
+                .register(registry);
+        FunctionCounter.builder("face.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .description("Recognition cache lookups")
+                .register(registry);
+        Gauge.builder("face.cache.hit.ratio", this, RecognitionCache::hitRatio)
+                .description("Share of recognition requests answered from the cache")
+                .register(registry);
+        Gauge.builder("face.cache.size", this, RecognitionCache::size)
+                .register(registry);
+    }
+
+    /**
+     * Find a fresh result for a near-duplicate frame, or null on a miss
+     */
+    public Hit lookup(long hash, String scope, long galleryVersion) {
+        if (ttlMillis <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            evictExpired(now);
+            Iterator<Entry> newestFirst = entries.descendingIterator();
+            while (newestFirst.hasNext()) {
+                Entry entry = newestFirst.next();
+                if (entry.galleryVersion == galleryVersion
+                        && Objects.equals(entry.scope, scope)
+                        && PerceptualHash.hammingDistance(entry.hash, hash) <= maxHammingDistance) {
+                    hits.incrementAndGet();
+                    return new Hit(entry.result);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(long hash, String scope, long galleryVersion, Map<String, Object> result) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            evictExpired(now);
+            while (entries.size() >= maxEntries) {
+                entries.pollFirst();
+            }
+            entries.addLast(new Entry(hash, scope, galleryVersion, now, result));
+        }
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictExpired(long now) {
+        while (!entries.isEmpty() && now - entries.peekFirst().createdAt > ttlMillis) {
+            entries.pollFirst();
+        }
+    }
+}
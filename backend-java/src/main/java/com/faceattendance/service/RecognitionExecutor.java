@@ -0,0 +1,150 @@
+package com.faceattendance.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the CPU-bound recognition stages of a request: image decode, quality
+ * check, descriptor extraction and gallery search.
+ *
+ * With platform request threads the stages run inline. When Tomcat runs
+ * requests on virtual threads ({@code spring.threads.virtual.enabled} on JDK
+ * 21 or later) they are handed to a bounded pool of platform threads instead:
+ * a virtual thread busy with pixels holds its carrier, so a burst of uploads
+ * would otherwise occupy every carrier and stall requests that only wait on
+ * disk or JDBC. {@code recognition.offload} forces either behaviour. The
+ * virtual-thread mode is experimental: it has not been load-tested on JDK 21.
+ */
+@Component
+public class RecognitionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecognitionExecutor.class);
+    private static final int VIRTUAL_THREADS_JDK = 21;
+    // Thread.isVirtual() exists from JDK 21; looked up so the default build still compiles and runs on 17
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    /** A stage that may throw a checked exception, rethrown as is by {@link #run} */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${recognition.offload:auto}")
+    private String offload;
+
+    @Value("${recognition.pool.size:0}")
+    private int poolSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor pool;
+
+    @PostConstruct
+    private void init() {
+        boolean virtualActive = virtualThreads && Runtime.version().feature() >= VIRTUAL_THREADS_JDK;
+        if (virtualThreads && !virtualActive) {
+            logger.warn("spring.threads.virtual.enabled needs JDK {} or later, running on {}; requests stay on platform threads",
+                    VIRTUAL_THREADS_JDK, Runtime.version());
+        } else if (virtualActive) {
+            logger.warn("Virtual-thread request handling is experimental and has not been load-tested");
+        }
+        if (!"always".equals(offload) && !("auto".equals(offload) && virtualActive)) {
+            return;
+        }
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "recognition-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("recognition.pool.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Recognition stages running on the platform pool")
+                .register(meterRegistry);
+        Gauge.builder("recognition.pool.queued", pool, p -> p.getQueue().size())
+                .description("Recognition stages waiting for a platform thread")
+                .register(meterRegistry);
+        logger.info("Recognition stages run on {} platform threads", size);
+    }
+
+    @PreDestroy
+    private void stopPool() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether recognition stages are handed to the platform pool
+     */
+    public boolean isOffloading() {
+        return pool != null;
+    }
+
+    /**
+     * Whether the thread is virtual; always false before JDK 21
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method isVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run a stage, on the platform pool when offloading; the caller waits for
+     * it either way
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T run(Stage<T, E> stage) throws E {
+        if (pool == null) {
+            return stage.run();
+        }
+        try {
+            return pool.submit(stage::run).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for recognition", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (E) cause;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.faceattendance.service;
+
+import com.faceattendance.model.FaceTemplate;
+import com.faceattendance.model.Student;
+import com.faceattendance.model.StudentChange;
+import com.faceattendance.repository.FaceTemplateRepository;
+import com.faceattendance.repository.StudentChangeRepository;
+import com.faceattendance.repository.StudentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Versioned change feed over the roster and its face templates, so kiosks can
+ * keep a local copy for offline matching and fetch only what changed.
+ *
+ * Every student write records a {@link StudentChange}; its id is the version.
+ * A student changed several times since a client's version has several rows
+ * and is sent once.
+ * A page of the feed is encoded as (big-endian, like the gallery snapshot):
+ * <pre>
+ *   header   magic "FARS", format version, descriptor length,
+ *            flags (1 = reset, 2 = more pages), version (long), entry count
+ *   entry    op (1 = upsert, 2 = delete), student id (u16 length + UTF-8)
+ *   upsert   name, section (u16 length + UTF-8, 0xFFFF for none),
+ *            template count (u16), then per template the descriptor as
+ *            little-endian float32, the same layout kiosks upload
+ * </pre>
+ * Reset tells the client to drop its copy before applying the page; it is set
+ * when the client's version is ahead of the server, e.g. after a restore.
+ */
+@Service
+public class RosterSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RosterSyncService.class);
+    private static final int MAGIC = 0x46415253;
+    private static final int FORMAT_VERSION = 1;
+    private static final int OP_UPSERT = 1;
+    private static final int OP_DELETE = 2;
+    private static final int FLAG_RESET = 1;
+    private static final int FLAG_MORE = 2;
+    private static final int RECORD_CHUNK = 500;
+
+    @Autowired
+    private StudentChangeRepository changeRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FaceTemplateRepository faceTemplateRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${roster.sync.settle-ms:2000}")
+    private long settleMs;
+
+    @Value("${roster.sync.max-transaction-ms:60000}")
+    private long maxTransactionMs;
+
+    @Value("${roster.sync.retention-ms:86400000}")
+    private long retentionMs;
+
+    private final String nodeId;
+
+    public RosterSyncService(@Value("${cluster.node-id:}") String nodeId) {
+        this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    /**
+     * One encoded page of the feed
+     */
+    public static final class Delta {
+        private final long version;
+        private final int upserts;
+        private final int deletes;
+        private final boolean more;
+        private final byte[] body;
+
+        Delta(long version, int upserts, int deletes, boolean more, byte[] body) {
+            this.version = version;
+            this.upserts = upserts;
+            this.deletes = deletes;
+            this.more = more;
+            this.body = body;
+        }
+
+        public long getVersion() { return version; }
+        public int getUpserts() { return upserts; }
+        public int getDeletes() { return deletes; }
+        public boolean hasMore() { return more; }
+        public byte[] getBody() { return body; }
+    }
+
+    /**
+     * Log students that have no change row yet, e.g. everyone registered before
+     * the log existed, so a client syncing from version 0 gets the whole roster
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedChangeLog() {
+        List<String> studentIds = changeRepository.findUnloggedStudentIds();
+        if (!studentIds.isEmpty()) {
+            recordChanges(studentIds);
+            logger.info("Roster change log seeded with {} students", studentIds.size());
+        }
+    }
+
+    /**
+     * Record that a student was added, updated or deleted
+     */
+    public void recordChange(String studentId) {
+        recordChanges(List.of(studentId));
+    }
+
+    /**
+     * Record changes for several students, one new row each; earlier rows are
+     * left for other nodes to replicate. Joins the caller's transaction when
+     * there is one.
+     */
+    public void recordChanges(Collection<String> studentIds) {
+        List<String> ids = new ArrayList<>(studentIds);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int from = 0; from < ids.size(); from += RECORD_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + RECORD_CHUNK));
+            transaction.executeWithoutResult(status -> {
+                LocalDateTime now = changeRepository.findDatabaseTime();
+                List<StudentChange> rows = new ArrayList<>(chunk.size());
+                for (String studentId : chunk) {
+                    StudentChange row = new StudentChange(studentId, nodeId);
+                    row.setChangedAt(now);
+                    rows.add(row);
+                }
+                changeRepository.saveAll(rows);
+            });
+        }
+    }
+
+    /**
+     * Drop rows that a newer row for the same student supersedes, once they
+     * are older than the retention. Until then every node, including one that
+     * wrote a later change to the same student, still sees the earlier row.
+     */
+    @Scheduled(fixedDelayString = "${roster.sync.compact-interval-ms:3600000}",
+            initialDelayString = "${roster.sync.compact-interval-ms:3600000}")
+    public void compactChangeLog() {
+        try {
+            LocalDateTime cutoff = changeRepository.findDatabaseTime().minusNanos(retentionMs * 1_000_000L);
+            Integer removed = new TransactionTemplate(transactionManager)
+                    .execute(status -> changeRepository.deleteSupersededBefore(cutoff));
+            if (removed != null && removed > 0) {
+                logger.info("Roster change log compacted: {} superseded rows removed", removed);
+            }
+        } catch (Exception e) {
+            logger.warn("Roster change log compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Current roster version
+     */
+    public long latestVersion() {
+        Long max = changeRepository.findMaxId();
+        return max != null ? max : 0L;
+    }
+
+    /**
+     * Students with a change row after {@code since}, settled or not
+     */
+    public List<String> studentsChangedSince(long since) {
+        return changeRepository.findStudentIdsChangedSince(since);
+    }
+
+    /**
+     * Identifies this instance in the change rows it writes
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Current time on the database clock, which every node's change rows use
+     */
+    public LocalDateTime databaseTime() {
+        return changeRepository.findDatabaseTime();
+    }
+
+    /**
+     * Up to {@code limit} change rows after {@code since}, in sequence order,
+     * stopping before rows newer than the settle window and at the first gap
+     * in the sequence that may still be filled.
+     *
+     * A missing id is either a write still committing, one rolled back, or a
+     * pruned row. Ids are taken in order but transactions commit in any order,
+     * so a long transaction (deleting or bulk-registering thousands of students)
+     * can commit a lower id after a short one on another node committed a
+     * higher one. A gap is taken as final once the row after it changed more
+     * than twice {@code roster.sync.max-transaction-ms} ago: that row's
+     * transaction started then, the gap's id was taken before that row's, and
+     * both transactions are assumed to finish within the bound. A write held
+     * open longer can still be skipped. Ages are measured on the database
+     * clock, so clock skew between nodes does not matter.
+     */
+    public List<StudentChange> settledChangesSince(long since, int limit) {
+        List<StudentChange> page = changeRepository.findByIdGreaterThanOrderByIdAsc(since, PageRequest.of(0, limit));
+        if (page.isEmpty()) {
+            return page;
+        }
+        LocalDateTime now = databaseTime();
+        LocalDateTime settled = now.minusNanos(settleMs * 1_000_000L);
+        LocalDateTime gapsFinal = gapsFinalBefore(now);
+        long expected = since + 1;
+        for (int i = 0; i < page.size(); i++) {
+            StudentChange change = page.get(i);
+            boolean openGap = change.getId() > expected && change.getChangedAt().isAfter(gapsFinal);
+            if (openGap || change.getChangedAt().isAfter(settled)) {
+                if (openGap) {
+                    logger.debug("Roster change log waits for ids {} to {}", expected, change.getId() - 1);
+                }
+                return page.subList(0, i);
+            }
+            expected = change.getId() + 1;
+        }
+        return page;
+    }
+
+    /**
+     * Position a gallery loaded now can replicate from without missing a
+     * write still committing: just below the oldest row recent enough to sit
+     * after an open gap. Rows after it are replayed, which is harmless.
+     */
+    public long replicationStart() {
+        Long recent = changeRepository.findMinIdChangedAfter(gapsFinalBefore(databaseTime()));
+        if (recent == null) {
+            return latestVersion();
+        }
+        Long before = changeRepository.findMaxIdBefore(recent);
+        return before != null ? before : 0L;
+    }
+
+    private LocalDateTime gapsFinalBefore(LocalDateTime now) {
+        return now.minusNanos(2 * maxTransactionMs * 1_000_000L);
+    }
+
+    /**
+     * First change after {@code since}, settled or not
+     */
+    public Optional<StudentChange> firstChangeAfter(long since) {
+        return changeRepository.findFirstByIdGreaterThanOrderByIdAsc(since);
+    }
+
+    /**
+     * Changes after {@code since}, at most {@code limit} change rows
+     */
+    public Delta changesSince(long since, int limit) throws IOException {
+        boolean reset = since < 0 || since > latestVersion();
+        long from = reset ? 0L : since;
+
+        List<StudentChange> page = settledChangesSince(from, limit + 1);
+        boolean more = page.size() > limit;
+        Set<String> studentIds = new LinkedHashSet<>();
+        long version = from;
+        for (StudentChange change : page.subList(0, Math.min(limit, page.size()))) {
+            studentIds.add(change.getStudentId());
+            version = change.getId();
+        }
+
+        Map<String, Student> students = new HashMap<>();
+        Map<String, List<byte[]>> templates = new HashMap<>();
+        if (!studentIds.isEmpty()) {
+            for (Student student : studentRepository.findByStudentIdIn(studentIds)) {
+                students.put(student.getStudentId(), student);
+            }
+            for (FaceTemplate template : faceTemplateRepository.findByStudentIdInOrderByIdAsc(studentIds)) {
+                if (template.getDescriptor().length == Descriptors.LENGTH * Float.BYTES) {
+                    templates.computeIfAbsent(template.getStudentId(), id -> new ArrayList<>()).add(template.getDescriptor());
+                }
+            }
+        }
+
+        // A client syncing from scratch has nothing to delete
+        Set<String> deleted = new HashSet<>();
+        for (String studentId : studentIds) {
+            if (!students.containsKey(studentId) && from > 0) {
+                deleted.add(studentId);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(Descriptors.LENGTH);
+        out.writeByte((reset ? FLAG_RESET : 0) | (more ? FLAG_MORE : 0));
+        out.writeLong(version);
+        out.writeInt(students.size() + deleted.size());
+        for (String studentId : studentIds) {
+            Student student = students.get(studentId);
+            if (student == null) {
+                if (deleted.contains(studentId)) {
+                    out.writeByte(OP_DELETE);
+                    GallerySnapshotStore.writeString(out, studentId);
+                }
+                continue;
+            }
+            List<byte[]> descriptors = templates.getOrDefault(studentId, List.of());
+            out.writeByte(OP_UPSERT);
+            GallerySnapshotStore.writeString(out, studentId);
+            GallerySnapshotStore.writeString(out, student.getName());
+            GallerySnapshotStore.writeString(out, student.getClassSection());
+            out.writeShort(descriptors.size());
+            for (byte[] descriptor : descriptors) {
+                out.write(descriptor);
+            }
+        }
+        out.flush();
+        return new Delta(version, students.size(), deleted.size(), more, bytes.toByteArray());
+    }
+}
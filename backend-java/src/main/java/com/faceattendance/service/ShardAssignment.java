@@ -0,0 +1,44 @@
+package com.faceattendance.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Which students this node keeps in its gallery when matching is sharded.
+ * Students are assigned to {@code cluster.shards.count} shards by the hash of
+ * their student ID; this node holds shard {@code cluster.shards.index}. With a
+ * single shard (the default) every student is local.
+ */
+@Component
+public class ShardAssignment {
+
+    private final int count;
+    private final int index;
+
+    public ShardAssignment(@Value("${cluster.shards.count:1}") int count,
+                           @Value("${cluster.shards.index:0}") int index) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("cluster.shards.index must be between 0 and cluster.shards.count - 1");
+        }
+        this.count = count;
+        this.index = index;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /**
+     * Shard holding a student; String.hashCode is specified, so every node agrees
+     */
+    public int shardOf(String studentId) {
+        return Math.floorMod(studentId.hashCode(), count);
+    }
+
+    public boolean owns(String studentId) {
+        return count == 1 || shardOf(studentId) == index;
+    }
+
+    public int getCount() { return count; }
+    public int getIndex() { return index; }
+}
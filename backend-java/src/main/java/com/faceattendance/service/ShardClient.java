@@ -0,0 +1,195 @@
+package com.faceattendance.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scatter-gather matching over sharded galleries. The probe descriptor goes
+ * to every other shard's {@code /api/internal/shards/match} in parallel while
+ * the local shard is searched in-process; each shard returns its top-K matches
+ * and the lists are merged by similarity. Shards that have not answered by the
+ * deadline are left out and the result is marked partial.
+ */
+@Component
+public class ShardClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardClient.class);
+    public static final String SECRET_HEADER = "X-Shard-Secret";
+
+    @Value("${cluster.shards.peers:}")
+    private String[] peers;
+
+    @Value("${cluster.shards.timeout-ms:250}")
+    private long timeoutMillis;
+
+    @Value("${cluster.shards.top-k:3}")
+    private int topK;
+
+    @Value("${cluster.shards.secret:}")
+    private String secret;
+
+    @Autowired
+    private ShardAssignment shardAssignment;
+
+    @Autowired
+    private FaceGallery faceGallery;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private HttpClient http;
+    private Timer scatterTimer;
+    private Counter partialCounter;
+
+    /**
+     * Merged answer from all shards that replied in time
+     */
+    public static final class Result {
+        private final List<FaceGallery.Match> matches;
+        private final int answered;
+        private final int shards;
+
+        Result(List<FaceGallery.Match> matches, int answered, int shards) {
+            this.matches = matches;
+            this.answered = answered;
+            this.shards = shards;
+        }
+
+        /** Best first */
+        public List<FaceGallery.Match> getMatches() { return matches; }
+        public FaceGallery.Match best() { return matches.isEmpty() ? null : matches.get(0); }
+        public int getAnswered() { return answered; }
+        public int getShards() { return shards; }
+        public boolean isPartial() { return answered < shards; }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!shardAssignment.isSharded()) {
+            return;
+        }
+        if (peers.length != shardAssignment.getCount()) {
+            throw new IllegalStateException("cluster.shards.peers must list one base URL per shard ("
+                    + shardAssignment.getCount() + "), got " + peers.length);
+        }
+        if (secret.isEmpty()) {
+            throw new IllegalStateException("cluster.shards.secret must be set when cluster.shards.count > 1");
+        }
+        http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        scatterTimer = Timer.builder("cluster.shards.scatter")
+                .description("Time to gather matches from all shards")
+                .register(meterRegistry);
+        partialCounter = Counter.builder("cluster.shards.partial")
+                .description("Sharded matches answered without every shard")
+                .register(meterRegistry);
+        logger.info("Sharded matching enabled: shard {} of {}", shardAssignment.getIndex(), shardAssignment.getCount());
+    }
+
+    /**
+     * Search every shard for the probe, within one section when {@code classSection} is not null
+     */
+    public Result scatter(float[] probe, String classSection) {
+        long start = System.nanoTime();
+        byte[] body = Descriptors.toBytes(probe);
+        List<CompletableFuture<List<FaceGallery.Match>>> remote = new ArrayList<>();
+        for (int shard = 0; shard < peers.length; shard++) {
+            if (shard != shardAssignment.getIndex()) {
+                remote.add(query(peers[shard].trim(), body, classSection));
+            }
+        }
+
+        List<FaceGallery.Match> merged = new ArrayList<>(faceGallery.matchTopK(probe, classSection, topK));
+        int answered = 1;
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (CompletableFuture<List<FaceGallery.Match>> future : remote) {
+            try {
+                merged.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                answered++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                future.cancel(true);
+                logger.debug("Shard did not answer in time: {}", e.toString());
+            }
+        }
+        merged.sort((a, b) -> Float.compare(b.getSimilarity(), a.getSimilarity()));
+        List<FaceGallery.Match> top = merged.size() > topK ? new ArrayList<>(merged.subList(0, topK)) : merged;
+
+        scatterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (answered < peers.length) {
+            partialCounter.increment();
+            logger.warn("Sharded match used {} of {} shards", answered, peers.length);
+        }
+        return new Result(top, answered, peers.length);
+    }
+
+    private CompletableFuture<List<FaceGallery.Match>> query(String baseUrl, byte[] body, String classSection) {
+        StringBuilder uri = new StringBuilder(baseUrl).append("/api/internal/shards/match?k=").append(topK);
+        if (classSection != null) {
+            uri.append("&section=").append(URLEncoder.encode(classSection, StandardCharsets.UTF_8));
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri.toString()))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        request.header(SECRET_HEADER, secret);
+        return http.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException(baseUrl + " answered " + response.statusCode());
+                    }
+                    return parse(response.body());
+                });
+    }
+
+    private List<FaceGallery.Match> parse(byte[] json) {
+        try {
+            List<FaceGallery.Match> matches = new ArrayList<>();
+            for (JsonNode match : objectMapper.readTree(json).path("matches")) {
+                matches.add(new FaceGallery.Match(match.path("student_id").asText(),
+                        (float) match.path("similarity").asDouble()));
+            }
+            return matches;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable shard response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check the shared secret a peer sent; never valid on an unsharded node
+     * or without a configured secret
+     */
+    public boolean isSecretValid(String presented) {
+        return shardAssignment.isSharded() && !secret.isEmpty() && presented != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,174 @@
+package com.faceattendance.tools;
+
+import com.faceattendance.service.Descriptors;
+import com.faceattendance.service.FaceGallery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the float and int8-quantized gallery search paths on a synthetic gallery.
+ *
+ * Each identity gets a random base descriptor; enrollment templates and probes are
+ * noisy copies of it. Reports top-1 identification accuracy, agreement with an exact
+ * brute-force search over all templates, per-query latency, and the heap retained
+ * by each gallery. {@code --off-heap=true} keeps descriptors in direct buffers.
+ * The probes are timed {@code --rounds} times per path and the fastest round is
+ * reported, which keeps scheduler noise on small machines out of the comparison.
+ *
+ * Usage:
+ *   mvn -q compile exec:java -Dexec.mainClass=com.faceattendance.tools.GalleryQuantizationBenchmark \
+ *       -Dexec.args="--students=100000 --templates=2 --probes=2000 --noise=0.6 --top-k=8 --off-heap=false --rounds=3"
+ */
+public class GalleryQuantizationBenchmark {
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseArgs(args);
+        int students = Integer.parseInt(options.getOrDefault("students", "100000"));
+        int templatesPerStudent = Integer.parseInt(options.getOrDefault("templates", "2"));
+        int probes = Integer.parseInt(options.getOrDefault("probes", "2000"));
+        float noise = Float.parseFloat(options.getOrDefault("noise", "0.6"));
+        int topK = Integer.parseInt(options.getOrDefault("top-k", "8"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        boolean offHeap = Boolean.parseBoolean(options.getOrDefault("off-heap", "false"));
+        int rounds = Math.max(1, Integer.parseInt(options.getOrDefault("rounds", "3")));
+
+        System.out.printf("Gallery: %d students x %d templates, %d probes, noise %.2f, top-K %d, %s storage%n",
+                students, templatesPerStudent, probes, noise, topK, offHeap ? "off-heap" : "heap");
+
+        Random random = new Random(seed);
+        float[][] bases = new float[students][];
+        Map<String, List<float[]>> templates = new HashMap<>(students * 2);
+        for (int s = 0; s < students; s++) {
+            bases[s] = randomUnit(random);
+            List<float[]> list = new ArrayList<>(templatesPerStudent);
+            for (int t = 0; t < templatesPerStudent; t++) {
+                list.add(noisyCopy(bases[s], noise, random));
+            }
+            templates.put(id(s), list);
+        }
+
+        int[] probeOwners = new int[probes];
+        float[][] probeVectors = new float[probes][];
+        for (int p = 0; p < probes; p++) {
+            probeOwners[p] = random.nextInt(students);
+            probeVectors[p] = noisyCopy(bases[probeOwners[p]], noise, random);
+        }
+
+        String[] exact = exactSearch(templates, probeVectors);
+
+        System.out.printf("%-8s %10s %10s %12s %12s %14s %10s%n",
+                "path", "accuracy", "vs-exact", "mean-us", "p99-us", "centroid-MB", "heap-MB");
+        for (boolean quantized : new boolean[] {false, true}) {
+            long heapBefore = usedHeap();
+            FaceGallery gallery = new FaceGallery(topK, quantized, offHeap);
+            gallery.putAll(templates, new HashMap<>());
+            long heapBytes = usedHeap() - heapBefore;
+            long centroidBytes = quantized ? students * (Descriptors.LENGTH + 4L) : students * Descriptors.LENGTH * 4L;
+            report(quantized ? "int8" : "float", gallery, probeVectors, probeOwners, exact, centroidBytes, heapBytes, rounds);
+        }
+    }
+
+    private static void report(String name, FaceGallery gallery, float[][] probes, int[] owners,
+                               String[] exact, long centroidBytes, long heapBytes, int rounds) {
+        // Warm up so the JIT has compiled and vectorized the scan loops
+        for (int i = 0; i < Math.min(probes.length, 200); i++) {
+            gallery.match(probes[i]);
+        }
+
+        double mean = Double.MAX_VALUE;
+        double p99 = 0;
+        int correct = 0;
+        int agree = 0;
+        for (int round = 0; round < rounds; round++) {
+            long[] nanos = new long[probes.length];
+            correct = 0;
+            agree = 0;
+            for (int p = 0; p < probes.length; p++) {
+                long start = System.nanoTime();
+                FaceGallery.Match match = gallery.match(probes[p]);
+                nanos[p] = System.nanoTime() - start;
+                if (match != null && match.getStudentId().equals(id(owners[p]))) {
+                    correct++;
+                }
+                if (match != null && match.getStudentId().equals(exact[p])) {
+                    agree++;
+                }
+            }
+            Arrays.sort(nanos);
+            double roundMean = Arrays.stream(nanos).average().orElse(0) / 1000.0;
+            if (roundMean < mean) {
+                mean = roundMean;
+                p99 = nanos[Math.min(nanos.length - 1, (int) (nanos.length * 0.99))] / 1000.0;
+            }
+        }
+        System.out.printf("%-8s %9.2f%% %9.2f%% %12.1f %12.1f %14.1f %10.1f%n", name,
+                100.0 * correct / probes.length, 100.0 * agree / probes.length,
+                mean, p99, centroidBytes / (1024.0 * 1024.0), heapBytes / (1024.0 * 1024.0));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Brute force over every template, used as the reference answer
+     */
+    private static String[] exactSearch(Map<String, List<float[]>> templates, float[][] probes) {
+        String[] best = new String[probes.length];
+        float[] bestScore = new float[probes.length];
+        Arrays.fill(bestScore, Float.NEGATIVE_INFINITY);
+        for (Map.Entry<String, List<float[]>> entry : templates.entrySet()) {
+            for (float[] template : entry.getValue()) {
+                for (int p = 0; p < probes.length; p++) {
+                    float score = Descriptors.dot(probes[p], template);
+                    if (score > bestScore[p]) {
+                        bestScore[p] = score;
+                        best[p] = entry.getKey();
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] v = new float[Descriptors.LENGTH];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return Descriptors.normalize(v);
+    }
+
+    private static float[] noisyCopy(float[] base, float noise, Random random) {
+        float[] v = new float[Descriptors.LENGTH];
+        float perComponent = (float) (noise / Math.sqrt(Descriptors.LENGTH));
+        for (int i = 0; i < v.length; i++) {
+            v[i] = base[i] + perComponent * (float) random.nextGaussian();
+        }
+        return Descriptors.normalize(v);
+    }
+
+    private static String id(int index) {
+        return "S" + index;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
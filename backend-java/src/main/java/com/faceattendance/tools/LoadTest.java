@@ -0,0 +1,173 @@
+package com.faceattendance.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop load generator for the check-in endpoint, used to compare
+ * execution modes. Each of {@code --concurrency} clients uploads the image,
+ * waits for the answer and sends the next one; requests finished during the
+ * warm-up are not counted.
+ *
+ * <pre>
+ *   mvn -q compile
+ *   java -cp target/classes com.faceattendance.tools.LoadTest \
+ *       --url http://localhost:8001 --image face.jpg --concurrency 16 --duration 30
+ * </pre>
+ * Run the server with rate limiting and the recognition cache off
+ * ({@code --ratelimit.enabled=false --face.cache.ttl-ms=0}) so every request
+ * goes through the full pipeline. The server's request-thread mode is read
+ * from /api/health/detailed and printed with the results;
+ * {@code --expect-threads virtual|platform} aborts if it is not the mode meant.
+ */
+public class LoadTest {
+
+    private static final String BOUNDARY = "----loadtest7d2f0c";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (!options.containsKey("image")) {
+            System.err.println("Usage: LoadTest --image <file> [--url http://localhost:8001] [--path /api/attendance]"
+                    + " [--concurrency 16] [--duration 30] [--warmup 5] [--expect-threads virtual|platform]");
+            System.exit(2);
+        }
+        String base = options.getOrDefault("url", "http://localhost:8001");
+        URI target = URI.create(base + options.getOrDefault("path", "/api/attendance"));
+        byte[] body = multipart(Files.readAllBytes(Paths.get(options.get("image"))));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "5")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        String health = http.send(HttpRequest.newBuilder(URI.create(base + "/api/health/detailed")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        String threads = field(health, "request_threads");
+        System.out.printf("server: request_threads=%s recognition_offload=%s%n",
+                threads, field(health, "recognition_offload"));
+        String expected = options.get("expect-threads");
+        if (expected != null && !expected.equals(threads)) {
+            System.err.println("Server runs requests on " + threads + " threads, expected " + expected);
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        List<long[]> latencies = new ArrayList<>();
+        List<Map<Integer, Integer>> statuses = new ArrayList<>();
+        int[] counts = new int[concurrency];
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        for (int client = 0; client < concurrency; client++) {
+            long[] samples = new long[1 << 16];
+            Map<Integer, Integer> codes = new HashMap<>();
+            latencies.add(samples);
+            statuses.add(codes);
+            String device = "loadtest-" + client;
+            int slot = client;
+            Thread thread = new Thread(() -> {
+                int count = 0;
+                try {
+                    while (System.nanoTime() < end) {
+                        HttpRequest request = HttpRequest.newBuilder(target)
+                                .timeout(Duration.ofSeconds(60))
+                                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                                .header("X-Device-Id", device)
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                                .build();
+                        long sent = System.nanoTime();
+                        int status;
+                        try {
+                            status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (IOException e) {
+                            status = -1;
+                        }
+                        long finished = System.nanoTime();
+                        if (sent >= measureFrom && finished <= end && count < samples.length) {
+                            samples[count++] = finished - sent;
+                            codes.merge(status, 1, Integer::sum);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    counts[slot] = count;
+                    done.countDown();
+                }
+            }, "client-" + client);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int position = 0;
+        for (int client = 0; client < concurrency; client++) {
+            System.arraycopy(latencies.get(client), 0, all, position, counts[client]);
+            position += counts[client];
+        }
+        Arrays.sort(all);
+        Map<Integer, Integer> codes = new TreeMap<>();
+        for (Map<Integer, Integer> client : statuses) {
+            client.forEach((status, count) -> codes.merge(status, count, Integer::sum));
+        }
+
+        double seconds = durationNanos / 1e9;
+        System.out.printf("%d clients, %d requests in %.0f s: %.1f req/s%n", concurrency, total, seconds, total / seconds);
+        System.out.printf("latency ms: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 1.0));
+        System.out.println("status: " + codes);
+    }
+
+    /**
+     * Value of a top-level string or boolean field in a flat JSON object
+     */
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\"\\s*:\\s*\"?([^\",}]*)").matcher(json);
+        return matcher.find() ? matcher.group(1) : "unknown";
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static byte[] multipart(byte[] image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"probe.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(image);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,305 @@
+package com.faceattendance.tools;
+
+import com.faceattendance.FaceAttendanceBackendApplication;
+import com.faceattendance.service.Descriptors;
+import com.faceattendance.service.FaceRecognitionService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures verification accuracy and matching speed on a labelled folder of
+ * face images, so a change to the threshold, the descriptor or the matcher
+ * shows its effect on both at once.
+ *
+ * Images are labelled by subfolder ({@code faces/23CS021/a.jpg}) or, in a flat
+ * folder, by the filename up to the first underscore ({@code 23CS021_a.jpg}).
+ * Descriptors are extracted by {@link FaceRecognitionService} in an application
+ * context started without the web server and with an in-memory database, the
+ * same code enrollment uses; every pair of images is then scored in parallel
+ * as a genuine (same label) or impostor comparison. Reports the equal error
+ * rate, the threshold minimising FAR + FRR, the error rates at the configured
+ * {@code face.recognition.min-confidence} and at {@code --target-far}, and
+ * comparisons per second (median of {@code --rounds} timed passes).
+ * {@code --out} writes the ROC/DET curve as CSV (threshold, FAR, FRR, TAR).
+ * With {@code --max-eer} or {@code --min-rate} the exit status is 1 when the
+ * run is worse, for use in CI. Other {@code --key=value} arguments containing
+ * a dot are passed to the application, e.g. {@code --face.detection.min-neighbors=4}.
+ *
+ * Usage:
+ *   mvn -q compile exec:java -Dexec.mainClass=com.faceattendance.tools.RecognitionEvaluation \
+ *       -Dexec.args="--dataset=uploads/faces --threads=4 --out=roc.csv --target-far=0.01"
+ */
+public class RecognitionEvaluation {
+
+    /** Score histogram resolution; thresholds are evaluated in steps of 1 / BINS */
+    private static final int BINS = 1000;
+    private static final double[] DET_FARS = {0.1, 0.01, 0.001, 0.0001};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        if (!options.containsKey("dataset")) {
+            System.err.println("Usage: RecognitionEvaluation --dataset=<folder> [--threads=N] [--rounds=3] [--out=roc.csv]"
+                    + " [--target-far=0.001] [--max-eer=x] [--min-rate=x] [--face.*=value ...]");
+            System.exit(2);
+        }
+        Path dataset = Paths.get(options.get("dataset"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int rounds = Math.max(1, Integer.parseInt(options.getOrDefault("rounds", "3")));
+        double targetFar = Double.parseDouble(options.getOrDefault("target-far", "0.001"));
+
+        List<Path> images = listImages(dataset);
+        String[] names = new String[images.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = label(dataset, images.get(i));
+        }
+
+        List<String> springArgs = new ArrayList<>(Arrays.asList(
+                "--spring.datasource.url=jdbc:h2:mem:evaluation",
+                "--face.snapshot.enabled=false",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--logging.level.com.faceattendance=WARN"));
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().contains(".")) {
+                springArgs.add("--" + option.getKey() + "=" + option.getValue());
+            }
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FaceAttendanceBackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(springArgs.toArray(new String[0]));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            FaceRecognitionService recognition = context.getBean(FaceRecognitionService.class);
+
+            long extractStart = System.nanoTime();
+            List<Future<float[]>> pending = new ArrayList<>(images.size());
+            for (Path image : images) {
+                pending.add(pool.submit(() -> recognition.extractDescriptor(image.toString())));
+            }
+            List<float[]> descriptors = new ArrayList<>(images.size());
+            List<Integer> labels = new ArrayList<>(images.size());
+            Map<String, Integer> labelIds = new HashMap<>();
+            int failed = 0;
+            for (int i = 0; i < pending.size(); i++) {
+                float[] descriptor = pending.get(i).get();
+                if (descriptor == null) {
+                    failed++;
+                    continue;
+                }
+                descriptors.add(descriptor);
+                labels.add(labelIds.computeIfAbsent(names[i], name -> labelIds.size()));
+            }
+            double extractSeconds = (System.nanoTime() - extractStart) / 1e9;
+            System.out.printf("Dataset: %d images of %d identities, %d without a descriptor; extracted %.1f images/s on %d threads%n",
+                    images.size(), labelIds.size(), failed, descriptors.size() / extractSeconds, threads);
+
+            float[][] vectors = descriptors.toArray(new float[0][]);
+            int[] owners = labels.stream().mapToInt(Integer::intValue).toArray();
+            long[][] histograms = null;
+            double[] rates = new double[rounds];
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                long[][] scored = scorePairs(vectors, owners, pool, threads);
+                rates[round] = (scored[0][BINS + 1] + scored[1][BINS + 1]) / ((System.nanoTime() - start) / 1e9);
+                histograms = scored;
+            }
+            Arrays.sort(rates);
+            double rate = rates[rounds / 2];
+
+            long genuine = histograms[0][BINS + 1];
+            long impostor = histograms[1][BINS + 1];
+            if (genuine == 0 || impostor == 0) {
+                System.err.println("Need at least two images of one identity and two identities");
+                System.exit(2);
+            }
+            double[][] curve = curve(histograms[0], histograms[1]);
+            System.out.printf("Comparisons: %d genuine, %d impostor, %.0f comparisons/s (median of %d)%n",
+                    genuine, impostor, rate, rounds);
+            report(curve, recognition.getMinConfidence(), targetFar, impostor);
+            if (options.containsKey("out")) {
+                writeCurve(Paths.get(options.get("out")), curve);
+            }
+
+            boolean regressed = false;
+            double eer = curve[equalErrorBin(curve)][3];
+            if (options.containsKey("max-eer") && eer > Double.parseDouble(options.get("max-eer"))) {
+                System.out.printf("FAIL: EER %.4f above %s%n", eer, options.get("max-eer"));
+                regressed = true;
+            }
+            if (options.containsKey("min-rate") && rate < Double.parseDouble(options.get("min-rate"))) {
+                System.out.printf("FAIL: %.0f comparisons/s below %s%n", rate, options.get("min-rate"));
+                regressed = true;
+            }
+            if (regressed) {
+                System.exit(1);
+            }
+        } finally {
+            pool.shutdownNow();
+            context.close();
+        }
+    }
+
+    /**
+     * Score every pair once. Returns genuine and impostor histograms over
+     * confidence bins, with the pair count in the last slot.
+     */
+    private static long[][] scorePairs(float[][] vectors, int[] owners, ExecutorService pool, int threads) throws Exception {
+        List<Future<long[][]>> parts = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            // Rows are striped across threads since later rows have fewer pairs
+            parts.add(pool.submit(() -> {
+                long[][] local = new long[2][BINS + 2];
+                for (int i = first; i < vectors.length; i += threads) {
+                    for (int j = i + 1; j < vectors.length; j++) {
+                        double confidence = Descriptors.toConfidence(Descriptors.dot(vectors[i], vectors[j]));
+                        local[owners[i] == owners[j] ? 0 : 1][(int) (confidence * BINS)]++;
+                    }
+                }
+                return local;
+            }));
+        }
+        long[][] total = new long[2][BINS + 2];
+        for (Future<long[][]> part : parts) {
+            long[][] local = part.get();
+            for (int kind = 0; kind < 2; kind++) {
+                for (int bin = 0; bin <= BINS; bin++) {
+                    total[kind][bin] += local[kind][bin];
+                    total[kind][BINS + 1] += local[kind][bin];
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Error rates for "match if confidence >= bin / BINS": rows of
+     * {threshold, FAR, FRR, (FAR + FRR) / 2}
+     */
+    private static double[][] curve(long[] genuine, long[] impostor) {
+        double genuineTotal = genuine[BINS + 1];
+        double impostorTotal = impostor[BINS + 1];
+        double[][] curve = new double[BINS + 1][];
+        long genuineBelow = 0;
+        long impostorBelow = 0;
+        for (int bin = 0; bin <= BINS; bin++) {
+            double far = (impostorTotal - impostorBelow) / impostorTotal;
+            double frr = genuineBelow / genuineTotal;
+            curve[bin] = new double[] {bin / (double) BINS, far, frr, (far + frr) / 2};
+            genuineBelow += genuine[bin];
+            impostorBelow += impostor[bin];
+        }
+        return curve;
+    }
+
+    private static void report(double[][] curve, double configured, double targetFar, long impostors) {
+        int eer = equalErrorBin(curve);
+        int best = 0;
+        int atTarget = -1;
+        for (int bin = 0; bin < curve.length; bin++) {
+            if (curve[bin][1] + curve[bin][2] < curve[best][1] + curve[best][2]) {
+                best = bin;
+            }
+            if (atTarget < 0 && curve[bin][1] <= targetFar) {
+                atTarget = bin;
+            }
+        }
+        int current = Math.min(BINS, (int) Math.ceil(configured * BINS));
+
+        System.out.printf("EER %.4f at threshold %.3f%n", curve[eer][3], curve[eer][0]);
+        printPoint("Best threshold (min FAR + FRR)", curve[best]);
+        printPoint("Configured threshold", curve[current]);
+        if (atTarget >= 0) {
+            printPoint("Threshold for FAR <= " + BigDecimal.valueOf(targetFar).toPlainString(), curve[atTarget]);
+        }
+        System.out.println("DET (FRR at FAR):");
+        for (double far : DET_FARS) {
+            if (far * impostors < 1) {
+                // Too few impostor pairs to resolve this rate
+                break;
+            }
+            for (double[] point : curve) {
+                if (point[1] <= far) {
+                    System.out.printf("  FAR %-7s FRR %.4f  threshold %.3f%n",
+                            BigDecimal.valueOf(far).toPlainString(), point[2], point[0]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void printPoint(String name, double[] point) {
+        System.out.printf("%s: %.3f  FAR %.4f  FRR %.4f%n", name, point[0], point[1], point[2]);
+    }
+
+    private static int equalErrorBin(double[][] curve) {
+        int eer = 0;
+        for (int bin = 1; bin < curve.length; bin++) {
+            if (Math.abs(curve[bin][1] - curve[bin][2]) < Math.abs(curve[eer][1] - curve[eer][2])) {
+                eer = bin;
+            }
+        }
+        return eer;
+    }
+
+    private static void writeCurve(Path file, double[][] curve) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("threshold,far,frr,tar");
+            for (double[] point : curve) {
+                out.printf(Locale.ROOT, "%.3f,%.6f,%.6f,%.6f%n", point[0], point[1], point[2], 1 - point[2]);
+            }
+        }
+        System.out.println("ROC/DET curve written to " + file);
+    }
+
+    private static List<Path> listImages(Path dataset) throws IOException {
+        try (Stream<Path> files = Files.walk(dataset)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.(jpe?g|png|bmp)"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String label(Path dataset, Path image) {
+        Path relative = dataset.relativize(image);
+        if (relative.getNameCount() > 1) {
+            return relative.getName(0).toString();
+        }
+        String name = image.getFileName().toString();
+        int underscore = name.indexOf('_');
+        return underscore > 0 ? name.substring(0, underscore) : name;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,58 @@
+package com.faceattendance.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Streaks over the month bitmaps, where bit d-1 stands for day d
+ */
+class AttendanceMatrixServiceTest {
+
+    /** Weekdays of a 31-day month starting on a Monday; 6-7, 13-14, 20-21 and 27-28 are weekends */
+    private static final long WEEKDAYS = days(1, 2, 3, 4, 5, 8, 9, 10, 11, 12, 15, 16, 17, 18, 19,
+            22, 23, 24, 25, 26, 29, 30, 31);
+
+    @Test
+    void streakFromFirstDay() {
+        assertEquals(3, AttendanceMatrixService.longestStreak(days(1, 2, 3), WEEKDAYS));
+    }
+
+    @Test
+    void streakToLastDay() {
+        assertEquals(3, AttendanceMatrixService.longestStreak(days(29, 30, 31), WEEKDAYS));
+        assertEquals(4, AttendanceMatrixService.longestStreak(days(26, 29, 30, 31), WEEKDAYS));
+    }
+
+    @Test
+    void streakCrossesWeekend() {
+        assertEquals(5, AttendanceMatrixService.longestStreak(days(3, 4, 5, 8, 9), WEEKDAYS));
+    }
+
+    @Test
+    void absentClassDayBreaksStreak() {
+        assertEquals(2, AttendanceMatrixService.longestStreak(days(1, 2, 4), WEEKDAYS));
+    }
+
+    @Test
+    void wholeMonthPresent() {
+        assertEquals(23, AttendanceMatrixService.longestStreak(WEEKDAYS, WEEKDAYS));
+        long everyDay = days(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20,
+                21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31);
+        assertEquals(31, AttendanceMatrixService.longestStreak(everyDay, everyDay));
+    }
+
+    @Test
+    void noClassDays() {
+        // Every bit up to 63 is filled in, one run over the whole word
+        assertEquals(0, AttendanceMatrixService.longestStreak(0L, 0L));
+    }
+
+    private static long days(int... days) {
+        long bits = 0;
+        for (int day : days) {
+            bits |= 1L << (day - 1);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,95 @@
+package com.faceattendance.service;
+
+import com.faceattendance.controller.MigrationController;
+import com.faceattendance.model.AttendanceRecord;
+import com.faceattendance.model.Student;
+import com.faceattendance.repository.AttendanceRecordRepository;
+import com.faceattendance.repository.StudentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Check-ins through {@link CheckInService} against a real registry, with the
+ * attendance table stood in for by a list
+ */
+class CheckInRegistryTest {
+
+    private static final String STUDENT = "23CS017";
+
+    private final List<AttendanceRecord> records = new ArrayList<>();
+    private CheckInRegistry registry;
+    private CheckInService checkIns;
+    private MigrationController migration;
+
+    @BeforeEach
+    void setUp() {
+        AttendanceRecordRepository attendanceRepository = mock(AttendanceRecordRepository.class);
+        when(attendanceRepository.findByAttendanceDate(any())).thenAnswer(call -> new ArrayList<>(records));
+        when(attendanceRepository.count()).thenAnswer(call -> (long) records.size());
+        when(attendanceRepository.save(any())).thenAnswer(call -> {
+            AttendanceRecord record = call.getArgument(0);
+            records.add(record);
+            return record;
+        });
+        StudentRepository studentRepository = mock(StudentRepository.class);
+        when(studentRepository.findByStudentId(anyString()))
+                .thenAnswer(call -> Optional.of(new Student(call.getArgument(0), "Test", null, "A", null)));
+        EnrollmentService enrollmentService = mock(EnrollmentService.class);
+        when(enrollmentService.deleteAllStudents()).thenAnswer(call -> {
+            records.clear();
+            return 1;
+        });
+
+        registry = new CheckInRegistry();
+        ReflectionTestUtils.setField(registry, "attendanceRepository", attendanceRepository);
+        ReflectionTestUtils.setField(registry, "studentIndex", new DenseStudentIndex());
+        registry.seedOnStartup();
+
+        checkIns = new CheckInService();
+        ReflectionTestUtils.setField(checkIns, "studentRepository", studentRepository);
+        ReflectionTestUtils.setField(checkIns, "attendanceRepository", attendanceRepository);
+        ReflectionTestUtils.setField(checkIns, "checkInRegistry", registry);
+        ReflectionTestUtils.setField(checkIns, "sessionService", mock(AttendanceSessionService.class));
+
+        migration = new MigrationController();
+        ReflectionTestUtils.setField(migration, "attendanceRepository", attendanceRepository);
+        ReflectionTestUtils.setField(migration, "checkInRegistry", registry);
+        ReflectionTestUtils.setField(migration, "enrollmentService", enrollmentService);
+    }
+
+    @Test
+    void repeatCheckInIsAlreadyMarked() {
+        assertEquals(CheckInService.Outcome.Status.MARKED, checkIn().getStatus());
+        assertEquals(CheckInService.Outcome.Status.ALREADY_MARKED, checkIn().getStatus());
+        assertEquals(1, records.size());
+    }
+
+    @Test
+    void checkInAfterClearingAllDataIsMarked() {
+        assertEquals(CheckInService.Outcome.Status.MARKED, checkIn().getStatus());
+
+        migration.clearAllData("yes-clear-all");
+
+        assertFalse(registry.isCheckedIn(STUDENT, LocalDate.now()));
+        assertEquals(0, registry.checkedInCount());
+        assertEquals(CheckInService.Outcome.Status.MARKED, checkIn().getStatus());
+        assertEquals(1, records.size());
+    }
+
+    private CheckInService.Outcome checkIn() {
+        return checkIns.record(STUDENT, 0.9, "uploads/attendance/test.jpg", LocalDate.now());
+    }
+}
@@ -0,0 +1,77 @@
+package com.faceattendance.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Detection end to end with a hand-built one-stump cascade (bright centre,
+ * darker surround) on a fixture with a single bright square in the middle.
+ */
+class FaceDetectorTest {
+
+    private FaceDetector detector;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        detector = new FaceDetector();
+        ReflectionTestUtils.setField(detector, "cascadeDir", cascadeDir().toString());
+        ReflectionTestUtils.setField(detector, "detectMaxSide", 320);
+        ReflectionTestUtils.setField(detector, "refineFaceSize", 120);
+        ReflectionTestUtils.setField(detector, "minFaceSize", 40);
+        ReflectionTestUtils.setField(detector, "scaleFactor", 1.1);
+        ReflectionTestUtils.setField(detector, "minNeighbors", 3);
+        ReflectionTestUtils.setField(detector, "threads", 2);
+        ReflectionTestUtils.invokeMethod(detector, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(detector, "stopPool");
+    }
+
+    @Test
+    void loadsHandBuiltCascade() throws Exception {
+        CascadeClassifier cascade = CascadeClassifier.load(cascadeDir().resolve("center-surround.xml"));
+        assertEquals(CascadeClassifier.FeatureType.HAAR, cascade.featureType());
+        assertEquals(24, cascade.windowWidth());
+        assertEquals(24, cascade.windowHeight());
+        assertEquals(1, cascade.stageCount());
+    }
+
+    @Test
+    void findsBoxAroundFixture() throws Exception {
+        assertTrue(detector.isLoaded());
+        BufferedImage image = ImageIO.read(FaceDetectorTest.class.getResource("/bright-square.png"));
+        Rectangle square = new Rectangle(100, 100, 40, 40);
+
+        List<Rectangle> faces = detector.detect(image);
+
+        assertEquals(1, faces.size(), "faces: " + faces);
+        Rectangle face = faces.get(0);
+        assertTrue(face.contains(square), "box " + face + " should contain " + square);
+        assertTrue(Math.abs(face.getCenterX() - square.getCenterX()) <= 10
+                && Math.abs(face.getCenterY() - square.getCenterY()) <= 10, "box " + face + " off centre");
+    }
+
+    @Test
+    void findsNothingOnBlankFrame() {
+        BufferedImage blank = new BufferedImage(240, 240, BufferedImage.TYPE_BYTE_GRAY);
+        assertTrue(detector.detect(blank).isEmpty());
+    }
+
+    private static Path cascadeDir() throws Exception {
+        return Paths.get(FaceDetectorTest.class.getResource("/cascade").toURI());
+    }
+}
@@ -0,0 +1,101 @@
+package com.faceattendance.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Quality gate over the hand-built cascade of {@link FaceDetectorTest}: the
+ * bright square is the only "face" it can find
+ */
+class ImageQualityGateTest {
+
+    private FaceDetector detector;
+    private ImageQualityGate gate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        detector = new FaceDetector();
+        ReflectionTestUtils.setField(detector, "cascadeDir",
+                Paths.get(ImageQualityGateTest.class.getResource("/cascade").toURI()).toString());
+        ReflectionTestUtils.setField(detector, "detectMaxSide", 320);
+        ReflectionTestUtils.setField(detector, "refineFaceSize", 120);
+        ReflectionTestUtils.setField(detector, "minFaceSize", 40);
+        ReflectionTestUtils.setField(detector, "scaleFactor", 1.1);
+        ReflectionTestUtils.setField(detector, "minNeighbors", 3);
+        ReflectionTestUtils.setField(detector, "threads", 2);
+        ReflectionTestUtils.invokeMethod(detector, "init");
+
+        gate = new ImageQualityGate();
+        ReflectionTestUtils.setField(gate, "enabled", true);
+        ReflectionTestUtils.setField(gate, "minSharpness", 0.0);
+        ReflectionTestUtils.setField(gate, "minBrightness", 10.0);
+        ReflectionTestUtils.setField(gate, "maxBrightness", 240.0);
+        ReflectionTestUtils.setField(gate, "maxClippedFraction", 0.9);
+        ReflectionTestUtils.setField(gate, "minFaceSize", 30);
+        ReflectionTestUtils.setField(gate, "faceDetector", detector);
+        ReflectionTestUtils.setField(gate, "meterRegistry", new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(detector, "stopPool");
+    }
+
+    @Test
+    void passesDetectedFaceOn() throws Exception {
+        ImageQualityGate.Result result = gate.check(decoded(ImageIO.read(
+                ImageQualityGateTest.class.getResource("/bright-square.png"))));
+
+        assertTrue(result.isAcceptable(), "rejected: " + result.getReason());
+        Rectangle face = result.getFace();
+        assertNotNull(face);
+        assertTrue(face.contains(new Rectangle(100, 100, 40, 40)), "box " + face);
+    }
+
+    @Test
+    void rejectsSmallFace() throws Exception {
+        ReflectionTestUtils.setField(gate, "minFaceSize", 200);
+
+        ImageQualityGate.Result result = gate.check(decoded(ImageIO.read(
+                ImageQualityGateTest.class.getResource("/bright-square.png"))));
+
+        assertEquals("face_too_small", result.getReason());
+        assertTrue((Integer) result.toMap().get("face_size") < 200);
+    }
+
+    @Test
+    void rejectsFrameWithoutFace() {
+        BufferedImage noise = new BufferedImage(240, 240, BufferedImage.TYPE_BYTE_GRAY);
+        Random random = new Random(7);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                int v = 60 + random.nextInt(140);
+                noise.setRGB(x, y, v << 16 | v << 8 | v);
+            }
+        }
+
+        ImageQualityGate.Result result = gate.check(decoded(noise));
+
+        assertEquals("no_face", result.getReason());
+        assertNull(result.getFace());
+    }
+
+    private static ImageDecoder.Decoded decoded(BufferedImage image) {
+        return new ImageDecoder.Decoded(image, image.getWidth(), image.getHeight(),
+                new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+    }
+}